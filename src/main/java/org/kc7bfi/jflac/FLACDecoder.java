@@ -23,10 +23,19 @@ package org.kc7bfi.jflac;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import org.kc7bfi.jflac.frame.BadHeaderException;
 import org.kc7bfi.jflac.frame.ChannelConstant;
@@ -36,7 +45,9 @@ import org.kc7bfi.jflac.frame.ChannelVerbatim;
 import org.kc7bfi.jflac.frame.Frame;
 import org.kc7bfi.jflac.frame.Header;
 import org.kc7bfi.jflac.io.BitInputStream;
-import org.kc7bfi.jflac.io.RandomFileInputStream;
+import org.kc7bfi.jflac.io.ByteBufferSource;
+import org.kc7bfi.jflac.io.ByteSource;
+import org.kc7bfi.jflac.io.InputStreamSource;
 import org.kc7bfi.jflac.metadata.Application;
 import org.kc7bfi.jflac.metadata.CueSheet;
 import org.kc7bfi.jflac.metadata.Metadata;
@@ -48,6 +59,7 @@ import org.kc7bfi.jflac.metadata.StreamInfo;
 import org.kc7bfi.jflac.metadata.Unknown;
 import org.kc7bfi.jflac.metadata.VorbisComment;
 import org.kc7bfi.jflac.util.ByteData;
+import org.kc7bfi.jflac.util.PCMKernels;
 import org.kc7bfi.jflac.util.CRC16;
 
 import static java.lang.System.getLogger;
@@ -64,17 +76,48 @@ public class FLACDecoder {
 
     private static final int FRAME_FOOTER_CRC_LEN = 16; // bits
     private static final byte[] ID3V2_TAG = new byte[] {'I', 'D', '3'};
+    /** the default number of largest frames in a chunk of a parallel decode */
+    private static final int FRAMES_PER_CHUNK = 16;
+
+    /** The CRC checks done on each frame. */
+    public enum Verification {
+        /** no CRC is computed */
+        NONE,
+        /** only the frame header CRC-8 is checked */
+        HEADER_ONLY,
+        /** the frame header CRC-8 and the frame CRC-16 are checked */
+        FULL
+    }
 
     private BitInputStream bitStream;
     private final ChannelData[] channelData = new ChannelData[Constants.MAX_CHANNELS];
+    /** the output of each channel data */
+    private final int[][] outputs = new int[Constants.MAX_CHANNELS][];
+    private final PCMKernels kernels = PCMKernels.getInstance();
+    /** the channel assignment of the last frame, not undone yet in the channel data */
+    private int pendingAssignment = Constants.CHANNEL_ASSIGNMENT_INDEPENDENT;
+    private int pendingSamples;
     private int outputCapacity;
     private int outputChannels;
     private final int lastFrameNumber;
     private long samplesDecoded;
     private StreamInfo streamInfo;
     private SeekTable seekTable;
+    /** the positions of the frames, null to search for them */
+    private FrameIndex frameIndex;
     private VorbisComment vorbisComment;
     private Frame frame = new Frame();
+    /** the subframes read into again for each frame, by channel */
+    private final ChannelConstant[] constantSubframes = new ChannelConstant[Constants.MAX_CHANNELS];
+    private final ChannelVerbatim[] verbatimSubframes = new ChannelVerbatim[Constants.MAX_CHANNELS];
+    private final ChannelFixed[] fixedSubframes = new ChannelFixed[Constants.MAX_CHANNELS];
+    private final ChannelLPC[] lpcSubframes = new ChannelLPC[Constants.MAX_CHANNELS];
+    /** false when the frames read are kept, then each frame gets new subframes */
+    private boolean reuseSubframes = true;
+    /** the PCM data handed to the PCM processors, filled again for each frame when reused */
+    private ByteData pcmData;
+    /** true to fill the same PCM data for each frame, see {@link #setReusePCMData(boolean)} */
+    private boolean reusePCMData;
     private final byte[] headerWarmup = new byte[2]; // contains the sync code and reserved bits
     //private int state;
     private int channels;
@@ -84,12 +127,26 @@ public class FLACDecoder {
     private int blockSize; // in samples (per channel)
     private final InputStream inputStream;
     private int metadataLength;
+    /** the source position of the first frame, known after the metadata is read */
+    private long firstFrameOffset;
+    /** the source position of the last frame read */
+    private long framePosition = -1;
 
     private int badFrames;
     private boolean eof = false;
+    /** true if the CRC-16 of the last frame read did not match */
+    private boolean frameCRCError = false;
+    private Verification verification = Verification.FULL;
+    /** the number of largest frames in a chunk of a parallel decode */
+    private int framesPerChunk = FRAMES_PER_CHUNK;
+    /** true to size the input buffer from the StreamInfo */
+    private boolean frameSizedBuffer = false;
 
     private final FrameListeners frameListeners = new FrameListeners();
     private final PCMProcessors pcmProcessors = new PCMProcessors();
+    private final SampleProcessors sampleProcessors = new SampleProcessors();
+    /** the outputs of the channels of the last frame, handed to the sample processors */
+    private int[][] samples = new int[0][];
 
     /**
      * The constructor.
@@ -97,8 +154,31 @@ public class FLACDecoder {
      * @param inputStream The input stream to read data from
      */
     public FLACDecoder(InputStream inputStream) {
-        this.inputStream = inputStream;
-        this.bitStream = new BitInputStream(inputStream);
+        this(inputStream, 0);
+    }
+
+    /**
+     * The constructor.
+     *
+     * @param inputStream The input stream to read data from
+     * @param bufferSize  The size of the input buffer in bytes, 0 to fit the
+     *                    maximum frame size of the StreamInfo once read
+     */
+    public FLACDecoder(InputStream inputStream, int bufferSize) {
+        this(bufferSize > 0 ? new InputStreamSource(inputStream, bufferSize) : new InputStreamSource(inputStream));
+        frameSizedBuffer = bufferSize <= 0;
+    }
+
+    /**
+     * The constructor.
+     * Seeking needs a source that can be positioned, e.g. a
+     * {@link org.kc7bfi.jflac.io.MappedFileSource}.
+     *
+     * @param source The source to read data from
+     */
+    public FLACDecoder(ByteSource source) {
+        this.inputStream = source instanceof InputStreamSource iss ? iss.getInputStream() : null;
+        this.bitStream = new BitInputStream(source);
         //state = DECODER_SEARCH_FOR_METADATA;
         lastFrameNumber = 0;
         samplesDecoded = 0;
@@ -122,6 +202,25 @@ public class FLACDecoder {
         return seekTable;
     }
 
+    /**
+     * Set the frame index used by {@link #seek(long)} and {@link #seekToFrame(long)}.
+     * With an index a seek is a binary search and the decode of one frame.
+     *
+     * @param frameIndex The index of the frames of the source, null to search the frames
+     */
+    public void setFrameIndex(FrameIndex frameIndex) {
+        this.frameIndex = frameIndex;
+    }
+
+    /**
+     * Return the frame index.
+     *
+     * @return The frame index, null if not set
+     */
+    public FrameIndex getFrameIndex() {
+        return frameIndex;
+    }
+
     /**
      * @since 18.02.2012
      * @return the vorbis comment, null if none
@@ -132,13 +231,34 @@ public class FLACDecoder {
 
     /**
      * Return the ChannelData object.
+     * The stereo decorrelation of the last frame read is undone in place at
+     * the first call, {@link #decodeFrame} undoes it while packing instead.
      *
      * @return The ChannelData object
      */
     public ChannelData[] getChannelData() {
+        undoChannelAssignment();
         return channelData;
     }
 
+    /** Undo the stereo decorrelation of the last frame in the channel data. */
+    private void undoChannelAssignment() {
+        switch (pendingAssignment) {
+        case Constants.CHANNEL_ASSIGNMENT_LEFT_SIDE:
+            kernels.undoLeftSide(outputs[0], outputs[1], pendingSamples);
+            break;
+        case Constants.CHANNEL_ASSIGNMENT_RIGHT_SIDE:
+            kernels.undoRightSide(outputs[0], outputs[1], pendingSamples);
+            break;
+        case Constants.CHANNEL_ASSIGNMENT_MID_SIDE:
+            kernels.undoMidSide(outputs[0], outputs[1], pendingSamples);
+            break;
+        default:
+            break;
+        }
+        pendingAssignment = Constants.CHANNEL_ASSIGNMENT_INDEPENDENT;
+    }
+
     /**
      * Return the input bit stream.
      *
@@ -151,7 +271,7 @@ public class FLACDecoder {
     /**
      * Return the input stream.
      *
-     * @return The input stream
+     * @return The input stream, null if not read from an input stream
      */
     public InputStream getInputStream() {
         return inputStream;
@@ -200,6 +320,24 @@ public class FLACDecoder {
         return lastFrameNumber;
     }
 
+    /**
+     * Set the CRC checks done on each frame. The default is {@link Verification#FULL}.
+     * Use {@link Verification#NONE} only for input that is known to be intact.
+     *
+     * @param verification The CRC checks to do
+     */
+    public void setVerification(Verification verification) {
+        this.verification = verification;
+        bitStream.setReadCRC16Enabled(verification == Verification.FULL);
+    }
+
+    /**
+     * @return the CRC checks done on each frame
+     */
+    public Verification getVerification() {
+        return verification;
+    }
+
     /**
      * Add a frame listener.
      *
@@ -227,6 +365,18 @@ public class FLACDecoder {
         pcmProcessors.addPCMProcessor(processor);
     }
 
+    /**
+     * Set whether the PCM processors get the same PCM data filled again for
+     * each frame. By default each frame gets new PCM data, so the processors
+     * may keep it. Processors that copy or write the data out before they
+     * return can share one, then decoding allocates nothing per frame.
+     *
+     * @param reuse true to fill the same PCM data for each frame
+     */
+    public void setReusePCMData(boolean reuse) {
+        reusePCMData = reuse;
+    }
+
     /**
      * Remove a PCM processor.
      *
@@ -236,6 +386,24 @@ public class FLACDecoder {
         pcmProcessors.removePCMProcessor(processor);
     }
 
+    /**
+     * Add a sample processor.
+     *
+     * @param processor The processor listener to add
+     */
+    public void addSampleProcessor(SampleProcessor processor) {
+        sampleProcessors.addSampleProcessor(processor);
+    }
+
+    /**
+     * Remove a sample processor.
+     *
+     * @param processor The processor listener to remove
+     */
+    public void removeSampleProcessor(SampleProcessor processor) {
+        sampleProcessors.removeSampleProcessor(processor);
+    }
+
     /**
      * return length of metadata, so can be considered as first frame offset
      *
@@ -246,9 +414,34 @@ public class FLACDecoder {
     }
 
     private boolean callPCMProcessors(Frame frame) {
-        ByteData bd = decodeFrame(frame, null);
-        pcmProcessors.processPCM(bd);
-        return !pcmProcessors.isCanceled();
+        if (!pcmProcessors.isCanceled()) {
+            pcmData = decodeFrame(frame, reusePCMData ? pcmData : null);
+            pcmProcessors.processPCM(pcmData);
+        }
+        if (!sampleProcessors.isEmpty()) {
+            sampleProcessors.processSamples(getSamples(), frame.header.blockSize, frame.header.bitsPerSample);
+        }
+        return !isCanceled();
+    }
+
+    /** true when there is no processor left to decode for */
+    private boolean isCanceled() {
+        return pcmProcessors.isCanceled() && sampleProcessors.isEmpty();
+    }
+
+    /**
+     * Return the samples of the channels of the last frame read,
+     * the stereo decorrelation undone. The arrays are the decoder's, they
+     * are overwritten by the next frame read.
+     *
+     * @return The outputs of the channel data, as many as the channels of the frame
+     */
+    public int[][] getSamples() {
+        undoChannelAssignment();
+        if (samples.length != channels || samples[0] != outputs[0]) {
+            samples = Arrays.copyOf(outputs, channels);
+        }
+        return samples;
     }
 
     /**
@@ -260,39 +453,71 @@ public class FLACDecoder {
      */
     public ByteData decodeFrame(Frame frame, ByteData pcmData) {
         // required size of the byte buffer
-        int byteSize = frame.header.blockSize * channels * ((streamInfo.getBitsPerSample() + 7) / 2);
+        int byteSize = getPCMSize(frame);
         if (pcmData == null || pcmData.getData().length < byteSize) {
             pcmData = new ByteData(byteSize);
-        } else {
-            pcmData.setLen(0);
-        }
-        if (streamInfo.getBitsPerSample() == 8) {
-            for (int i = 0; i < frame.header.blockSize; i++) {
-                for (int channel = 0; channel < channels; channel++) {
-                    pcmData.append((byte) (channelData[channel].getOutput()[i] + 0x80));
-                }
-            }
-        } else if (streamInfo.getBitsPerSample() == 16) {
-            for (int i = 0; i < frame.header.blockSize; i++) {
-                for (int channel = 0; channel < channels; channel++) {
-                    short val = (short) (channelData[channel].getOutput()[i]);
-                    pcmData.append((byte) (val & 0xff));
-                    pcmData.append((byte) ((val >> 8) & 0xff));
-                }
-            }
-        } else if (streamInfo.getBitsPerSample() == 24) {
-            for (int i = 0; i < frame.header.blockSize; i++) {
-                for (int channel = 0; channel < channels; channel++) {
-                    int val = (channelData[channel].getOutput()[i]);
-                    pcmData.append((byte) (val & 0xff));
-                    pcmData.append((byte) ((val >> 8) & 0xff));
-                    pcmData.append((byte) ((val >> 16) & 0xff));
-                }
-            }
         }
+        pcmData.setLen(decodeFrame(frame, pcmData.getData(), 0));
         return pcmData;
     }
 
+    /**
+     * Write the PCM data of the last frame read to the buffer at its position,
+     * the position is moved after the data. The buffer may be a direct one.
+     *
+     * @param dst the buffer to write to
+     * @return the number of bytes written
+     * @throws BufferOverflowException if the frame does not fit in the remaining bytes
+     */
+    public int decodeInto(ByteBuffer dst) {
+        int byteSize = getPCMSize(frame);
+        if (dst.remaining() < byteSize) throw new BufferOverflowException();
+        int position = dst.position();
+        if (dst.hasArray()) {
+            decodeFrame(frame, dst.array(), dst.arrayOffset() + position);
+        } else if (byteSize > 0) {
+            kernels.pack(outputs, channels, pendingAssignment, streamInfo.getBitsPerSample() / 8, frame.header.blockSize, dst, position);
+        }
+        dst.position(position + byteSize);
+        return byteSize;
+    }
+
+    /**
+     * Write the PCM data of the last frame read to the array.
+     *
+     * @param dst the array to write to
+     * @param off the position in the array to write at
+     * @return the number of bytes written
+     * @throws IndexOutOfBoundsException if the frame does not fit in the array
+     */
+    public int decodeInto(byte[] dst, int off) {
+        if (off < 0 || dst.length - off < getPCMSize(frame)) throw new IndexOutOfBoundsException(off);
+        return decodeFrame(frame, dst, off);
+    }
+
+    /**
+     * Return the size of the PCM data of a frame.
+     *
+     * @param frame the frame
+     * @return the number of bytes, 0 for sample sizes other than 8, 16 and 24 bits
+     */
+    public int getPCMSize(Frame frame) {
+        return switch (streamInfo.getBitsPerSample()) {
+            case 8, 16, 24 -> frame.header.blockSize * channels * (streamInfo.getBitsPerSample() / 8);
+            default -> 0;
+        };
+    }
+
+    /** pack the channels to the array */
+    private int decodeFrame(Frame frame, byte[] dst, int off) {
+        return switch (streamInfo.getBitsPerSample()) {
+            case 8 -> kernels.pack8(outputs, channels, pendingAssignment, frame.header.blockSize, dst, off) - off;
+            case 16 -> kernels.pack16(outputs, channels, pendingAssignment, frame.header.blockSize, dst, off) - off;
+            case 24 -> kernels.pack24(outputs, channels, pendingAssignment, frame.header.blockSize, dst, off) - off;
+            default -> 0;
+        };
+    }
+
     /**
      * Read the FLAC stream info.
      *
@@ -322,6 +547,7 @@ public class FLACDecoder {
             metadataList.add(metadata);
             metadataLength += metadata.getLength();
         } while (!metadata.isLast());
+        firstFrameOffset = bitStream.getPosition();
         return metadataList.toArray(new Metadata[0]);
     }
 
@@ -333,14 +559,19 @@ public class FLACDecoder {
      * @throws IOException On read error
      */
     public Metadata[] readMetadata(StreamInfo streamInfo) throws IOException {
-        if (streamInfo.isLast()) return new Metadata[0];
+        metadataLength = streamInfo.getLength();
+        if (streamInfo.isLast()) {
+            firstFrameOffset = bitStream.getPosition();
+            return new Metadata[0];
+        }
         Vector<Metadata> metadataList = new Vector<>();
-        metadataLength = 0;
         Metadata metadata;
         do {
             metadata = readNextMetadata();
             metadataList.add(metadata);
+            metadataLength += metadata.getLength();
         } while (!metadata.isLast());
+        firstFrameOffset = bitStream.getPosition();
         return metadataList.toArray(new Metadata[0]);
     }
 
@@ -356,6 +587,7 @@ public class FLACDecoder {
                 findFrameSync();
                 try {
                     readFrame();
+                    if (frameCRCError) badFrames++;
                     frameListeners.processFrame(frame);
                     if (!callPCMProcessors(frame))
                         throw new EOFException();
@@ -380,6 +612,7 @@ public class FLACDecoder {
                 findFrameSync();
                 try {
                     readFrame();
+                    if (frameCRCError) badFrames++;
                     frameListeners.processFrame(frame);
                     callPCMProcessors(frame);
                 } catch (FrameDecodeException e) {
@@ -391,19 +624,228 @@ public class FLACDecoder {
         }
     }
 
+    /**
+     * Decode the FLAC file, the frames are decoded in parallel.
+     *
+     * @param pool The pool to decode the frames on
+     * @throws IOException On read error
+     * @see #decodeFrames(ForkJoinPool)
+     */
+    public void decode(ForkJoinPool pool) throws IOException {
+        readMetadata();
+        decodeFrames(pool);
+    }
+
+    /**
+     * Decode the data frames in parallel.
+     * The source is split into chunks of frames that are decoded on the pool,
+     * the frame listeners, PCM and sample processors are called in stream order on
+     * the calling thread. Frame errors are only counted in {@link #getBadFrames()}.
+     * Falls back to {@link #decodeFrames()} if the source can not be positioned.
+     *
+     * @param pool The pool to decode the frames on
+     * @throws IOException On read error
+     */
+    public void decodeFrames(ForkJoinPool pool) throws IOException {
+        ByteSource source = bitStream.getSource();
+        long length = source.isSeekable() ? source.getLength() : -1;
+        if (length < 0 || streamInfo == null) {
+            decodeFrames();
+            return;
+        }
+        int frameSize = getFrameBufferSize(streamInfo);
+        long chunkStart = bitStream.getPosition();
+        boolean keepSamples = !sampleProcessors.isEmpty();
+        // a few chunks ahead of the one delivered keep the workers busy
+        Deque<ForkJoinTask<DecodedChunk>> pending = new ArrayDeque<>();
+        try {
+            while (chunkStart < length || !pending.isEmpty()) {
+                while (chunkStart < length && pending.size() < pool.getParallelism() * 2) {
+                    long start = chunkStart;
+                    long end = Math.min(start + (long) frameSize * framesPerChunk, length);
+                    pending.add(pool.submit(() -> decodeChunk(start, end, frameSize, length, keepSamples)));
+                    chunkStart = end;
+                }
+                DecodedChunk chunk = pending.remove().join();
+                badFrames += chunk.badFrames;
+                for (int i = 0; i < chunk.frames.size(); i++) {
+                    frame = chunk.frames.get(i);
+                    samplesDecoded += frame.header.blockSize;
+                    frameListeners.processFrame(frame);
+                    pcmProcessors.processPCM(chunk.pcm.get(i));
+                    if (keepSamples) {
+                        sampleProcessors.processSamples(chunk.samples.get(i), frame.header.blockSize, frame.header.bitsPerSample);
+                    }
+                    if (isCanceled()) {
+                        chunkStart = length;
+                        pending.forEach(task -> task.cancel(false));
+                        pending.clear();
+                        break;
+                    }
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pending.forEach(task -> task.cancel(false));
+        }
+        bitStream.seek(length);
+        eof = true;
+    }
+
+    /**
+     * Set the size of the chunks of a parallel decode, see {@link #decodeFrames(ForkJoinPool)}.
+     * Smaller chunks spread the frames over more tasks, each reads some bytes
+     * after its chunk to finish its last frame.
+     *
+     * @param frames The number of largest frames of the stream in a chunk, at least 1
+     */
+    public void setFramesPerChunk(int frames) {
+        if (frames < 1) throw new IllegalArgumentException("frames: " + frames);
+        this.framesPerChunk = frames;
+    }
+
+    /**
+     * Decode the frames starting in a chunk of the source.
+     * The chunk is read with enough bytes after it to finish its last frame,
+     * from the source at the position of the chunk, not through the bit
+     * stream, so the chunks are read in parallel too.
+     *
+     * @param start      The position of the chunk
+     * @param end        The position after the chunk
+     * @param frameSize  The largest frame size expected
+     * @param length     The length of the source
+     * @param keepSamples True to keep the samples of the frames too
+     * @return The decoded frames
+     */
+    private DecodedChunk decodeChunk(long start, long end, int frameSize, long length, boolean keepSamples) {
+        try {
+            ByteSource source = bitStream.getSource();
+            for (long tail = frameSize; ; tail *= 2) {
+                ByteBuffer data = source.readAt(start, (int) (Math.min(end + tail, length) - start));
+                FLACDecoder worker = new FLACDecoder(new ByteBufferSource(data));
+                worker.streamInfo = streamInfo;
+                DecodedChunk chunk = worker.decodeChunkFrames(end - start, start + data.remaining() < length, verification, keepSamples);
+                if (chunk != null) return chunk;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Decode the frames of a chunk read by {@link #decodeChunk}.
+     * A chunk may start in the middle of a frame, so the first frame is only
+     * taken when its CRC-16 matches, a false sync makes it look again one byte further.
+     * A first frame failing its CRC-16 is taken as a bad frame, zeroed, when
+     * the next frame follows it, see {@link #isFollowedByFrame}.
+     *
+     * @param end          The position after the chunk
+     * @param truncated    True if the source ends before the stream
+     * @param verification The CRC checks to do once in sync
+     * @param keepSamples  True to keep the samples of the frames too
+     * @return The decoded frames, null if a frame starting in the chunk is cut off
+     * @throws IOException On read error
+     */
+    private DecodedChunk decodeChunkFrames(long end, boolean truncated, Verification verification, boolean keepSamples) throws IOException {
+        DecodedChunk chunk = new DecodedChunk();
+        boolean synced = false;
+        reuseSubframes = false;
+        setVerification(Verification.FULL);
+        while (true) {
+            findFrameSync();
+            long frameStart = bitStream.getPosition() - headerWarmup.length;
+            if (frameStart >= end) return chunk;
+            try {
+                frame = new Frame();
+                readFrame();
+                if (!synced) {
+                    if (frameCRCError && !isFollowedByFrame(truncated)) throw new FrameDecodeException("CRC Error");
+                    synced = true;
+                    setVerification(verification);
+                }
+                if (frameCRCError) {
+                    chunk.badFrames++;
+                }
+                chunk.frames.add(frame);
+                chunk.pcm.add(decodeFrame(frame, null));
+                if (keepSamples) {
+                    int[][] copy = new int[channels][];
+                    int[][] frameSamples = getSamples();
+                    for (int i = 0; i < channels; i++) {
+                        copy[i] = Arrays.copyOf(frameSamples[i], frame.header.blockSize);
+                    }
+                    chunk.samples.add(copy);
+                }
+            } catch (EOFException e) {
+                return truncated ? null : chunk;
+            } catch (FrameDecodeException e) {
+                if (synced) {
+                    chunk.badFrames++;
+                } else {
+                    bitStream.seek(frameStart + 1);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (synced) throw e;
+                bitStream.seek(frameStart + 1);
+            }
+        }
+    }
+
+    /**
+     * Tell if the frame read, its header CRC-8 matching, is followed by the
+     * next frame of the stream: a frame header at its end, numbered right
+     * after it, or the end of the stream. A false sync hardly passes both.
+     * The bit stream is left at the end of the frame.
+     *
+     * @param truncated True if the source ends before the stream
+     * @return True if the frame is one of the stream
+     * @throws EOFException If the source ends in the next header, and is truncated
+     * @throws IOException  On read error
+     */
+    private boolean isFollowedByFrame(boolean truncated) throws IOException {
+        long frameEnd = bitStream.getPosition();
+        Header next = new Header();
+        byte[] warmup = new byte[2];
+        try {
+            warmup[0] = (byte) bitStream.readRawUInt(8);
+            warmup[1] = (byte) bitStream.readRawUInt(8);
+            if ((warmup[0] & 0xff) != 0xff || (warmup[1] & 0xfe) != 0xf8) return false;
+            next.read(bitStream, warmup, streamInfo, true);
+            return next.sampleNumber == frame.header.sampleNumber + frame.header.blockSize;
+        } catch (EOFException e) {
+            if (truncated) throw e;
+            // the last frame ends the source
+            return bitStream.getPosition() == frameEnd;
+        } catch (BadHeaderException e) {
+            return false;
+        } finally {
+            bitStream.seek(frameEnd);
+        }
+    }
+
     /**
      * Seeks for sample and provide seek data
      *
+     * The search starts between the seek points around the target, or the
+     * whole stream if there is no SeekTable. Only the headers of the frames
+     * probed are read, the frame holding the target is the one decoded.
+     *
      * @param target_sample
-     * @return SeekPoint of best match
+     * @return SeekPoint of best match, the position of its frame and the samples to skip in it
      * @throws IOException
      */
     public SeekPoint seek(long target_sample) throws IOException {
         // Check if it can found using seek table first
-        if (!(inputStream instanceof RandomFileInputStream rf))
+        ByteSource source = bitStream.getSource();
+        if (!source.isSeekable())
             return null;
-        long stream_length = rf.getLength();
-        int first_frame_offset = metadataLength;
+        if (frameIndex != null) {
+            SeekPoint point = seekIndexed(target_sample);
+            if (point != null) return point;
+        }
+        long stream_length = source.getLength();
+        long first_frame_offset = firstFrameOffset;
         long total_samples = streamInfo.getTotalSamples();
         int min_blocksize = streamInfo.getMinBlockSize();
         int max_blocksize = streamInfo.getMaxBlockSize();
@@ -428,7 +870,7 @@ public class FLACDecoder {
         if (min_framesize == 0)
             min_framesize = max_framesize / 2;
         // Set an upper and lower bound on where in the stream we will search.
-        int lower_bound = first_frame_offset;
+        long lower_bound = first_frame_offset;
 
         long upper_bound;
         // Calc the upper_bound, beyond which we never want to seek.
@@ -439,15 +881,38 @@ public class FLACDecoder {
             upper_bound = stream_length - (((long) channels * bps * Constants.MAX_BLOCK_SIZE) / 8 + 128 + 2);
 
         long pos = -1;
-        // If there's no seek table, we need to use the metadata (if we
-        // have it) and the filelength to estimate the position of the
-        // frame with the correct sample.
-        if (total_samples > 0) {
+        long lower_sample = 0, lower_offset = first_frame_offset;
+        long upper_sample = total_samples, upper_offset = stream_length;
+        // The seek points around the target bound the search.
+        if (seekTable != null) {
+            int s = seekTable.findSeekPoint(target_sample);
+            if (s >= 0) {
+                lower_sample = seekTable.getSampleNumber(s);
+                lower_offset = first_frame_offset + seekTable.getStreamOffset(s);
+                lower_bound = lower_offset;
+            }
+            // placeholder points hold -1 as the sample number
+            if (s + 1 < seekTable.numberOfPoints() && seekTable.getSampleNumber(s + 1) > target_sample) {
+                upper_sample = seekTable.getSampleNumber(s + 1);
+                upper_offset = first_frame_offset + seekTable.getStreamOffset(s + 1);
+                // the target frame starts before the next seek point
+                upper_bound = Math.min(upper_bound, upper_offset);
+            }
+            if (s >= 0 && target_sample < lower_sample + seekTable.getFrameSamples(s)) {
+                // the seek point is the target frame
+                upper_sample = lower_sample;
+                pos = lower_offset;
+            }
+        }
+        // Estimate the position of the frame with the correct sample
+        // between the bounds, the seek points or the metadata (if we
+        // have it) and the file length.
+        if (upper_sample > lower_sample) {
             // For max accuracy we should be using
-            // (stream_length-first_frame_offset-1) in the divisor, but the
-            // difference is trivial and (stream_length-first_frame_offset)
+            // (upper_offset-lower_offset-1) in the divisor, but the
+            // difference is trivial and (upper_offset-lower_offset)
             // has no chance of underflow.
-            pos = first_frame_offset + ((target_sample * (stream_length - first_frame_offset)) / total_samples)
+            pos = lower_offset + (((target_sample - lower_sample) * (upper_offset - lower_offset)) / (upper_sample - lower_sample))
                     - approx_bytes_per_frame;
         }
         // If there's no seek table and total_samples is unknown, we
@@ -459,13 +924,13 @@ public class FLACDecoder {
         int this_block_size;
         int this_jump = 0, last_jump = 0;
         long last_pos = pos;
+        long frame_pos = pos;
         int sample_skip = 0;
         /// save current file position
-        long savedPos = rf.getPosition();
-        BitInputStream savedState = bitStream;
-        bitStream = new BitInputStream(rf);
+        long savedPos = bitStream.getPosition();
         Frame savedFrame = frame;
         frame = new Frame();
+        Header probe = new Header();
 
         while (true) {
             // Clip the position to the bounds, lower bound takes precedence.
@@ -479,8 +944,7 @@ public class FLACDecoder {
             }
 
             if (needs_seek) {
-                bitStream.reset();
-                rf.seek(pos);
+                bitStream.seek(pos);
                 needs_seek = false;
                 i++;
             }
@@ -496,31 +960,46 @@ public class FLACDecoder {
             boolean got_a_frame = false;
             for (int unparseable_count = 0; unparseable_count < 20; unparseable_count++) {
                 try {
-                    findFrameSync();
-                    readFrame();
+                    // the header is enough to steer the search, the subframes are skipped
+                    bitStream.skipToFrameSync();
+                    frame_pos = bitStream.getPosition();
+                    headerWarmup[0] = (byte) bitStream.readRawUInt(8);
+                    headerWarmup[1] = (byte) bitStream.readRawUInt(8);
+                    probe.read(bitStream, headerWarmup, streamInfo, true);
                     got_a_frame = true;
                     break;
-                } catch (Exception e) {
+                } catch (BadHeaderException e) {
                     logger.log(Level.TRACE, String.format("iter %d (%s%n", unparseable_count, e));
+                    bitStream.seek(frame_pos + 1);
+                } catch (EOFException e) {
+                    break;
                 }
             }
             if (!got_a_frame) {
-                restoreState(savedPos, savedState, savedFrame);
+                restoreState(savedPos, savedFrame);
                 return null;
             }
 
             // Break out if seeking somehow got caught in a loop.
             if (i >= 30) {
                 logger.log(Level.TRACE, String.format("Nothing found after 30 iters ps %d%n", pos));
+                if (!readFrameAt(frame_pos)) {
+                    restoreState(savedPos, savedFrame);
+                    return null;
+                }
                 break;
             }
-            this_frame_sample = frame.header.sampleNumber;
-            this_block_size = frame.header.blockSize;
+            this_frame_sample = probe.sampleNumber;
+            this_block_size = probe.blockSize;
 
             if (target_sample >= this_frame_sample && target_sample < this_frame_sample + this_block_size) {
                 // Found the frame containing the target sample.
                 sample_skip = (int) (target_sample - this_frame_sample);
-                break;
+                if (readFrameAt(frame_pos)) break;
+                // a sync code in the data behind a header passing its CRC-8, look on after it
+                pos = frame_pos + 1;
+                needs_seek = true;
+                continue;
             } else if (target_sample < this_frame_sample) {
                 if (this_frame_sample - target_sample <= this_block_size * 10L) {
                     // Target is no more than 10 frames back,
@@ -553,7 +1032,7 @@ public class FLACDecoder {
 
                     if (last_jump > 0 && this_jump >= last_jump)
                         this_jump = last_jump - approx_bytes_per_frame;
-                    pos = rf.getPosition() - this_jump;
+                    pos = bitStream.getPosition() - this_jump;
                     last_jump = this_jump;
                 }
 logger.log(Level.TRACE, String.format("Jump backward samples %d for %d to %d%n", this_frame_sample - target_sample, this_jump, target_sample));
@@ -565,7 +1044,10 @@ logger.log(Level.TRACE, String.format("Jump backward samples %d for %d to %d%n",
                     // Target is no more than 10 frames ahead,
                     // seek forwards a frame at a time.
 
-                    pos = rf.getPosition();
+                    // no frame is shorter than the smallest frame size
+                    long skip = frame_pos + streamInfo.getMinFrameSize() - bitStream.getPosition();
+                    if (skip > 0) bitStream.skip(skip);
+                    pos = bitStream.getPosition();
                     //needs_seek = true;
                     // just keep reading
                     // If we haven't hit the target frame yet and our position
@@ -590,7 +1072,7 @@ logger.log(Level.TRACE, String.format("Jump backward samples %d for %d to %d%n",
 
                     if (last_jump > 0 && this_jump >= last_jump)
                         this_jump = last_jump - approx_bytes_per_frame;
-                    pos = rf.getPosition() + this_jump;
+                    pos = bitStream.getPosition() + this_jump;
                     logger.log(Level.TRACE, String.format("Need a jump forward samples  %d for %d to %d%n", target_sample
                                 - this_frame_sample, this_jump, target_sample));
                     last_jump = this_jump;
@@ -600,15 +1082,61 @@ logger.log(Level.TRACE, String.format("Jump backward samples %d for %d to %d%n",
             last_frame_sample = this_frame_sample;
         }
         logger.log(Level.TRACE, String.format("Completed in %d%n", i));
-        return new SeekPoint(target_sample - sample_skip, last_pos, sample_skip);
+        return new SeekPoint(target_sample - sample_skip, frame_pos, sample_skip);
     }
 
-    private void restoreState(long savedPos, BitInputStream savedState, Frame savedFrame) {
-        if (!(inputStream instanceof RandomFileInputStream))
-            return;
+    /**
+     * Read and decode the frame at a position found by a search.
+     *
+     * @param position The source position of the frame
+     * @return false if the frame is bad
+     * @throws IOException On read error
+     */
+    private boolean readFrameAt(long position) throws IOException {
+        bitStream.seek(position);
+        headerWarmup[0] = (byte) bitStream.readRawUInt(8);
+        headerWarmup[1] = (byte) bitStream.readRawUInt(8);
+        try {
+            readFrame();
+            return true;
+        } catch (FrameDecodeException e) {
+            logger.log(Level.TRACE, "bad frame at " + position + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Read the frame holding a sample, found in the frame index.
+     *
+     * @param target_sample The sample to seek
+     * @return SeekPoint of the frame, with the samples to skip in it as the frame samples,
+     *         null if the index does not know the sample or the frame is bad
+     * @throws IOException On read error
+     */
+    private SeekPoint seekIndexed(long target_sample) throws IOException {
+        int i = frameIndex.find(target_sample);
+        if (i < 0) return null;
+        long offset = frameIndex.getOffset(i);
+        long sampleNumber = frameIndex.getSampleNumber(i);
+        long savedPos = bitStream.getPosition();
+        long savedSamples = samplesDecoded;
+        bitStream.seek(offset);
+        samplesDecoded = sampleNumber;
+        try {
+            findFrameSync();
+            readFrame();
+        } catch (FrameDecodeException e) {
+            logger.log(Level.DEBUG, "bad indexed frame at " + offset + ": " + e.getMessage());
+            bitStream.seek(savedPos);
+            samplesDecoded = savedSamples;
+            return null;
+        }
+        return new SeekPoint(sampleNumber, offset, (int) (target_sample - sampleNumber));
+    }
+
+    private void restoreState(long savedPos, Frame savedFrame) {
         try {
-            ((RandomFileInputStream) inputStream).seek(savedPos);
-            bitStream = savedState;
+            bitStream.seek(savedPos);
             frame = savedFrame;
         } catch (IOException e) {
             logger.log(Level.ERROR, e.getMessage(), e);
@@ -623,11 +1151,8 @@ logger.log(Level.TRACE, String.format("Jump backward samples %d for %d to %d%n",
      * @throws IOException On read error
      */
     public void decode(SeekPoint from, SeekPoint to) throws IOException {
-        // position random access file
-        if (!(inputStream instanceof RandomFileInputStream))
-            throw new IOException("Not a RandomFileInputStream: " + inputStream.getClass().getName());
-        ((RandomFileInputStream) inputStream).seek(from.getStreamOffset());
-        bitStream.reset();
+        // position the source
+        bitStream.seek(from.getStreamOffset());
         samplesDecoded = from.getSampleNumber();
 
         try {
@@ -635,6 +1160,7 @@ logger.log(Level.TRACE, String.format("Jump backward samples %d for %d to %d%n",
                 findFrameSync();
                 try {
                     readFrame();
+                    if (frameCRCError) badFrames++;
                     frameListeners.processFrame(frame);
                     callPCMProcessors(frame);
                 } catch (FrameDecodeException e) {
@@ -647,8 +1173,35 @@ logger.log(Level.TRACE, String.format("Jump backward samples %d for %d to %d%n",
         }
     }
 
+    /**
+     * Read the frame at a position of a seekable source, like a bookmark from
+     * {@link #getFramePosition()} or a frame of a {@link FrameIndex}.
+     *
+     * @param point The first sample and the source position of the frame
+     * @return The frame, or the next one if the position is not the start of a good frame,
+     *         null at the end of the stream
+     * @throws IOException on read error, or if the source can not be positioned
+     */
+    public Frame readFrameAt(SeekPoint point) throws IOException {
+        bitStream.seek(point.getStreamOffset());
+        samplesDecoded = point.getSampleNumber();
+        eof = false;
+        return readNextFrame();
+    }
+
+    /**
+     * Return the source position of the last frame read.
+     *
+     * @return The position of the frame sync code, -1 if no frame has been read
+     */
+    public long getFramePosition() {
+        return framePosition;
+    }
+
     /**
      * Read the next data frame.
+     * The frame, its header and its subframes are read into again by the next
+     * call, copy what is kept.
      *
      * @return The next frame
      * @throws IOException on read error
@@ -659,6 +1212,7 @@ logger.log(Level.TRACE, String.format("Jump backward samples %d for %d to %d%n",
                 findFrameSync(); // above function sets the status for us
                 try {
                     readFrame();
+                    if (frameCRCError) badFrames++;
                     return frame;
                 } catch (FrameDecodeException e) {
 logger.log(Level.DEBUG, e.getMessage() + " at sample " + samplesDecoded + " of " + streamInfo.getTotalSamples(), e);
@@ -685,8 +1239,11 @@ logger.log(Level.DEBUG, e.getMessage() + " at sample " + samplesDecoded + " of "
 
         Arrays.fill(channelData, null);
 
+        Arrays.fill(outputs, null);
+
         for (int i = 0; i < channels; i++) {
             channelData[i] = new ChannelData(size);
+            outputs[i] = channelData[i].getOutput();
         }
 
         outputCapacity = size;
@@ -735,7 +1292,11 @@ logger.log(Level.DEBUG, e.getMessage() + " at sample " + samplesDecoded + " of "
             metadata = new StreamInfo(bitStream, length, isLast);
             if (((StreamInfo) metadata).getTotalSamples() > 0) {
                 streamInfo = (StreamInfo) metadata;
+                if (frameSizedBuffer && bitStream.getSource() instanceof InputStreamSource source) {
+                    source.setBufferSize(getFrameBufferSize(streamInfo));
+                }
                 pcmProcessors.processStreamInfo(streamInfo);
+                sampleProcessors.processStreamInfo(streamInfo);
             }
         } else if (type == Metadata.METADATA_TYPE_SEEKTABLE) {
             metadata = seekTable = new SeekTable(bitStream, length, isLast);
@@ -757,6 +1318,23 @@ logger.log(Level.DEBUG, e.getMessage() + " at sample " + samplesDecoded + " of "
         return metadata;
     }
 
+    /**
+     * Return an input buffer size that holds the largest frame of the stream.
+     * A decoder of an input stream reads the stream in buffers of this size
+     * after the StreamInfo.
+     *
+     * @param streamInfo The StreamInfo
+     * @return The buffer size in bytes
+     */
+    public static int getFrameBufferSize(StreamInfo streamInfo) {
+        int size = streamInfo.getMaxFrameSize();
+        if (size <= 0) {
+            // not known, guess the size of a verbatim frame
+            size = streamInfo.getMaxBlockSize() * streamInfo.getChannels() * streamInfo.getBitsPerSample() / 8 + 64;
+        }
+        return Math.max(size, InputStreamSource.DEFAULT_BUFFER_SIZE);
+    }
+
     private void skipID3v2Tag() throws IOException {
 
         // skip the version and flags bytes 
@@ -829,19 +1407,24 @@ logger.log(Level.DEBUG, e.getMessage() + " at sample " + samplesDecoded + " of "
      */
     public Frame readFrame() throws IOException, FrameDecodeException {
         int channel;
-        int i;
-        int mid, side, left, right;
         short frameCRC; // the one we calculate from the input stream
         //int x;
 
         // init the CRC
-        frameCRC = 0;
-        frameCRC = CRC16.update(headerWarmup[0], frameCRC);
-        frameCRC = CRC16.update(headerWarmup[1], frameCRC);
-        bitStream.resetReadCRC16(frameCRC);
+        frameCRCError = false;
+        framePosition = bitStream.getPosition() - headerWarmup.length;
+        pendingAssignment = Constants.CHANNEL_ASSIGNMENT_INDEPENDENT;
+        boolean verifyFrame = verification == Verification.FULL;
+        if (verifyFrame) {
+            frameCRC = 0;
+            frameCRC = CRC16.update(headerWarmup[0], frameCRC);
+            frameCRC = CRC16.update(headerWarmup[1], frameCRC);
+            bitStream.resetReadCRC16(frameCRC);
+        }
 
         try {
-            frame.header = new Header(bitStream, headerWarmup, streamInfo);
+            if (frame.header == null) frame.header = new Header();
+            frame.header.read(bitStream, headerWarmup, streamInfo, verification != Verification.NONE);
         } catch (BadHeaderException e) {
             frameListeners.processError("Found bad header: " + e);
             throw new FrameDecodeException("Bad Frame Header: " + e, e);
@@ -880,41 +1463,15 @@ logger.log(Level.DEBUG, e.getMessage() + " at sample " + samplesDecoded + " of "
         readZeroPadding();
 
         // Read the frame CRC-16 from the footer and check
-        frameCRC = bitStream.getReadCRC16();
+        frameCRC = verifyFrame ? bitStream.getReadCRC16() : 0;
         frame.setCRC((short) bitStream.readRawUInt(FRAME_FOOTER_CRC_LEN));
-        if (frameCRC == frame.getCRC()) {
-            // Undo any special channel coding
-            switch (frame.header.channelAssignment) {
-            case Constants.CHANNEL_ASSIGNMENT_INDEPENDENT:
-                // do nothing
-                break;
-            case Constants.CHANNEL_ASSIGNMENT_LEFT_SIDE:
-                for (i = 0; i < frame.header.blockSize; i++)
-                    channelData[1].getOutput()[i] = channelData[0].getOutput()[i] - channelData[1].getOutput()[i];
-                break;
-            case Constants.CHANNEL_ASSIGNMENT_RIGHT_SIDE:
-                for (i = 0; i < frame.header.blockSize; i++)
-                    channelData[0].getOutput()[i] += channelData[1].getOutput()[i];
-                break;
-            case Constants.CHANNEL_ASSIGNMENT_MID_SIDE:
-                for (i = 0; i < frame.header.blockSize; i++) {
-                    mid = channelData[0].getOutput()[i];
-                    side = channelData[1].getOutput()[i];
-                    mid <<= 1;
-                    if ((side & 1) != 0) // i.e. if 'side' is odd...
-                        mid++;
-                    left = mid + side;
-                    right = mid - side;
-                    channelData[0].getOutput()[i] = left >> 1;
-                    channelData[1].getOutput()[i] = right >> 1;
-                }
-                //System.exit(1);
-                break;
-            default:
-                break;
-            }
+        if (!verifyFrame || frameCRC == frame.getCRC()) {
+            // the special channel coding is undone on the way out, see getChannelData() and decodeFrame()
+            pendingAssignment = frame.header.channelAssignment;
+            pendingSamples = frame.header.blockSize;
         } else {
             // Bad frame, emit error and zero the output signal
+            frameCRCError = true;
             frameListeners.processError("CRC Error: " + Integer.toHexString((frameCRC & 0xffff)) + " vs " + Integer.toHexString((frame.getCRC() & 0xffff)));
             for (channel = 0; channel < frame.header.channels; channel++) {
                 for (int j = 0; j < frame.header.blockSize; j++)
@@ -955,26 +1512,31 @@ logger.log(Level.DEBUG, e.getMessage() + " at sample " + samplesDecoded + " of "
             throw new FrameDecodeException("ReadSubframe LOST_SYNC: " + Integer.toHexString(x & 0xff));
             //return true;
         } else if (x == 0) {
-            frame.subframes[channel] = new ChannelConstant(bitStream, frame.header, channelData[channel], bps, wastedBits);
+            if (constantSubframes[channel] == null || !reuseSubframes) constantSubframes[channel] = new ChannelConstant();
+            constantSubframes[channel].read(bitStream, frame.header, channelData[channel], bps, wastedBits);
+            frame.subframes[channel] = constantSubframes[channel];
         } else if (x == 2) {
-            frame.subframes[channel] = new ChannelVerbatim(bitStream, frame.header, channelData[channel], bps, wastedBits);
+            if (verbatimSubframes[channel] == null || !reuseSubframes) verbatimSubframes[channel] = new ChannelVerbatim();
+            verbatimSubframes[channel].read(bitStream, frame.header, channelData[channel], bps, wastedBits);
+            frame.subframes[channel] = verbatimSubframes[channel];
         } else if (x < 16) {
             //state = DECODER_UNPARSEABLE_STREAM;
             throw new FrameDecodeException("ReadSubframe Bad Subframe Type: " + Integer.toHexString(x & 0xff));
         } else if (x <= 24) {
             //FLACSubframe_Fixed subframe = read_subframe_fixed_(channel, bps, (x >> 1) & 7);
-            frame.subframes[channel] = new ChannelFixed(bitStream, frame.header, channelData[channel], bps, wastedBits, (x >> 1) & 7);
+            if (fixedSubframes[channel] == null || !reuseSubframes) fixedSubframes[channel] = new ChannelFixed();
+            fixedSubframes[channel].read(bitStream, frame.header, channelData[channel], bps, wastedBits, (x >> 1) & 7);
+            frame.subframes[channel] = fixedSubframes[channel];
         } else if (x < 64) {
             //state = DECODER_UNPARSEABLE_STREAM;
             throw new FrameDecodeException("ReadSubframe Bad Subframe Type: " + Integer.toHexString(x & 0xff));
         } else {
-            frame.subframes[channel] = new ChannelLPC(bitStream, frame.header, channelData[channel], bps, wastedBits, ((x >> 1) & 31) + 1);
+            if (lpcSubframes[channel] == null || !reuseSubframes) lpcSubframes[channel] = new ChannelLPC();
+            lpcSubframes[channel].read(bitStream, frame.header, channelData[channel], bps, wastedBits, ((x >> 1) & 31) + 1);
+            frame.subframes[channel] = lpcSubframes[channel];
         }
         if (haveWastedBits) {
-            int i;
-            x = frame.subframes[channel].getWastedBits();
-            for (i = 0; i < frame.header.blockSize; i++)
-                channelData[channel].getOutput()[i] <<= x;
+            kernels.shiftLeft(outputs[channel], frame.header.blockSize, frame.subframes[channel].getWastedBits());
         }
     }
 
@@ -990,39 +1552,72 @@ logger.log(Level.DEBUG, e.getMessage() + " at sample " + samplesDecoded + " of "
     }
 
     /**
-     * This will do a forward seek - backwards is not possible yet
-     * because we would need to reset the inputstream
+     * Position the decoder at the frame holding a sample,
+     * see {@link #seekToFrame(long)}.
      *
-     * @param seekToSamples
+     * @param seekToSamples The sample to seek
+     * @throws IOException On read error
      * @since 18.02.2012
      */
     public void seekTo(long seekToSamples) throws IOException {
-        // Seek with SeekTable if any provided
+        seekToFrame(seekToSamples);
+    }
+
+    /**
+     * Read the frame holding a sample.
+     * A seekable source, see {@link org.kc7bfi.jflac.io.SeekableSource}, is
+     * positioned forward or backward by {@link #seek(long)}. Other sources
+     * are read forward up to the frame, from the last seek point before it
+     * if the SeekTable is given.
+     * <p>
+     * The frame is the current frame, {@link #getChannelData()} and
+     * {@link #decodeFrame(Frame, ByteData)} give its samples, the samples before
+     * the target in it are to be skipped. {@link #getSamplesDecoded()} is its
+     * first sample, the next frame read is the one after it.
+     *
+     * @param seekToSamples The sample to seek
+     * @return The frame holding the sample, null if the sample is behind a source
+     *         that can not be positioned or past the end of the stream
+     * @throws IOException On read error
+     */
+    public Frame seekToFrame(long seekToSamples) throws IOException {
+        if (bitStream.getSource().isSeekable() && streamInfo != null) {
+            SeekPoint point = seek(seekToSamples);
+            if (point == null || frame.header.sampleNumber + frame.header.blockSize <= seekToSamples) return null;
+            samplesDecoded = frame.header.sampleNumber;
+            eof = false;
+            return frame;
+        }
         if (seekTable != null) {
-            for (int s = 0; s < seekTable.numberOfPoints(); s++) {
-                SeekPoint p = seekTable.getSeekPoint(s);
-                samplesDecoded = p.getSampleNumber();
-                if (samplesDecoded >= seekToSamples) {
-                    if (s > 0) p = seekTable.getSeekPoint(s - 1);
-                    samplesDecoded = p.getSampleNumber();
-                    bitStream.skip(p.getStreamOffset());
-                    break;
+            // Seek with SeekTable if any provided, to the last point before the sample
+            int s = seekTable.findSeekPoint(seekToSamples - 1);
+            if (s >= 0) {
+                long position = firstFrameOffset + seekTable.getStreamOffset(s);
+                long skip = position - bitStream.getPosition();
+                if (skip > 0) {
+                    samplesDecoded = seekTable.getSampleNumber(s);
+                    bitStream.skip(skip);
                 }
             }
         }
-        while (samplesDecoded < seekToSamples) {
-            try {
+        try {
+            while (samplesDecoded <= seekToSamples) {
                 findFrameSync();
-                readFrame();
-                if (frame != null && frame.header != null) {
-                    samplesDecoded = frame.header.sampleNumber;
-                    if (samplesDecoded + frame.header.blockSize >= seekToSamples) break;
+                try {
+                    readFrame();
+                } catch (FrameDecodeException e) {
+                    // We will recieve DecoderExceptions if we did seek
+                    // I would expect that seeking will reach a sync point
+                    continue;
                 }
-            } catch (Throwable ex) {
-                // We will recieve DecoderExceptions if we did seek
-                // I would expect that seeking will reach a sync point
+                samplesDecoded = frame.header.sampleNumber;
+                if (samplesDecoded > seekToSamples) return null;
+                if (samplesDecoded + frame.header.blockSize > seekToSamples) return frame;
             }
+        } catch (EOFException e) {
+            eof = true;
         }
+        return null;
     }
 
     /**
@@ -1039,7 +1634,8 @@ logger.log(Level.DEBUG, e.getMessage() + " at sample " + samplesDecoded + " of "
     }
 
     /**
-     * @return Returns the number of bad frames decoded.
+     * @return Returns the number of bad frames decoded, the frames skipped for
+     *         an error and the frames of zeros for a CRC-16 mismatch.
      */
     public int getBadFrames() {
         return badFrames;
@@ -1051,4 +1647,13 @@ logger.log(Level.DEBUG, e.getMessage() + " at sample " + samplesDecoded + " of "
     public boolean isEOF() {
         return eof;
     }
+
+    /** The frames of a chunk decoded in parallel. */
+    private static final class DecodedChunk {
+        final List<Frame> frames = new ArrayList<>();
+        final List<ByteData> pcm = new ArrayList<>();
+        /** the samples of the frames, only if there are sample processors */
+        final List<int[][]> samples = new ArrayList<>();
+        int badFrames;
+    }
 }
@@ -0,0 +1,285 @@
+/*
+ * libFLAC - Free Lossless Audio Codec library Copyright (C) 2000,2001,2002,2003
+ * Josh Coalson
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Library General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Library General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.kc7bfi.jflac;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.kc7bfi.jflac.io.MappedFileSource;
+import org.kc7bfi.jflac.metadata.SeekPoint;
+
+import static java.lang.System.getLogger;
+
+
+/**
+ * The position of every frame of a FLAC file.
+ * <p>
+ * The frames are found by a {@link FrameScanner} once, the index is cached in
+ * a file next to the FLAC file or in a directory of its own. The cache is
+ * used while the size and the modification time of the FLAC file are the ones
+ * it was built for, and is only read at the first lookup.
+ * <p>
+ * A frame is looked up by a binary search, see {@link FLACDecoder#setFrameIndex(FrameIndex)}.
+ *
+ * @author kc7bfi
+ */
+public class FrameIndex {
+
+    private static final Logger logger = getLogger(FrameIndex.class.getName());
+
+    /** the extension of the index files */
+    public static final String EXTENSION = ".jfidx";
+
+    private static final int MAGIC = 0x4a464958; // "JFIX"
+    private static final int VERSION = 1;
+
+    /** the FLAC file, null if the index is not cached */
+    private final Path flac;
+    /** the cache file, null if the index is not cached */
+    private final Path indexFile;
+
+    /** the first sample of each frame */
+    private long[] samples;
+    /** the source position of each frame */
+    private long[] offsets;
+    /** the number of samples of each frame */
+    private int[] blockSizes;
+    private int count = -1;
+
+    /**
+     * The constructor, for an index kept in memory only.
+     *
+     * @param frames The frames in stream order, as returned by {@link FrameScanner#scan()}
+     */
+    public FrameIndex(List<SeekPoint> frames) {
+        this.flac = null;
+        this.indexFile = null;
+        setFrames(frames);
+    }
+
+    private FrameIndex(Path flac, Path indexFile) {
+        this.flac = flac;
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Return the index of a FLAC file, cached next to it.
+     *
+     * @param flac The FLAC file
+     * @return The index, read or built at the first lookup
+     */
+    public static FrameIndex of(Path flac) {
+        return new FrameIndex(flac, flac.resolveSibling(flac.getFileName() + EXTENSION));
+    }
+
+    /**
+     * Return the index of a FLAC file, cached in a directory.
+     *
+     * @param flac      The FLAC file
+     * @param directory The directory of the index files, created if missing
+     * @return The index, read or built at the first lookup
+     */
+    public static FrameIndex of(Path flac, Path directory) {
+        String name = Integer.toHexString(flac.toAbsolutePath().normalize().toString().hashCode()) + "-" + flac.getFileName();
+        return new FrameIndex(flac, directory.resolve(name + EXTENSION));
+    }
+
+    /**
+     * Return the cache file.
+     *
+     * @return The index file, null if the index is not cached
+     */
+    public Path getIndexFile() {
+        return indexFile;
+    }
+
+    /**
+     * Return the number of frames.
+     *
+     * @return The number of frames
+     * @throws IOException if the index can not be read nor built
+     */
+    public int size() throws IOException {
+        load();
+        return count;
+    }
+
+    /**
+     * Find the frame holding a sample.
+     *
+     * @param sample The sample number
+     * @return The frame, -1 if the sample is not in the stream
+     * @throws IOException if the index can not be read nor built
+     */
+    public int find(long sample) throws IOException {
+        load();
+        if (count == 0 || sample < samples[0]) return -1;
+        int i = Arrays.binarySearch(samples, 0, count, sample);
+        if (i < 0) i = -i - 2;
+        return sample < samples[i] + blockSizes[i] ? i : -1;
+    }
+
+    /**
+     * Return the frame as a seek point.
+     *
+     * @param frame The frame, from 0 to {@link #size()}
+     * @return The first sample, the source position and the number of samples of the frame
+     * @throws IOException if the index can not be read nor built
+     */
+    public SeekPoint getSeekPoint(int frame) throws IOException {
+        load();
+        return new SeekPoint(samples[frame], offsets[frame], blockSizes[frame]);
+    }
+
+    /**
+     * Return the first sample of a frame.
+     *
+     * @param frame The frame, from 0 to {@link #size()}
+     * @return The sample number
+     * @throws IOException if the index can not be read nor built
+     */
+    public long getSampleNumber(int frame) throws IOException {
+        load();
+        return samples[frame];
+    }
+
+    /**
+     * Return the source position of a frame.
+     *
+     * @param frame The frame, from 0 to {@link #size()}
+     * @return The position of the frame sync code
+     * @throws IOException if the index can not be read nor built
+     */
+    public long getOffset(int frame) throws IOException {
+        load();
+        return offsets[frame];
+    }
+
+    /**
+     * Read the index file, or build it when it is missing or out of date.
+     */
+    private synchronized void load() throws IOException {
+        if (count >= 0) return;
+        long length = Files.size(flac);
+        long modified = Files.getLastModifiedTime(flac).toMillis();
+        try {
+            if (read(length, modified)) return;
+        } catch (NoSuchFileException e) {
+            // not built yet
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "bad frame index " + indexFile + ": " + e);
+        }
+
+        try (MappedFileSource source = new MappedFileSource(flac)) {
+            FLACDecoder decoder = new FLACDecoder(source);
+            decoder.readMetadata();
+            setFrames(new FrameScanner(decoder).scan());
+        }
+        try {
+            write(length, modified);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "frame index not saved " + indexFile + ": " + e);
+        }
+    }
+
+    private void setFrames(List<SeekPoint> frames) {
+        count = frames.size();
+        samples = new long[count];
+        offsets = new long[count];
+        blockSizes = new int[count];
+        for (int i = 0; i < count; i++) {
+            SeekPoint frame = frames.get(i);
+            samples[i] = frame.getSampleNumber();
+            offsets[i] = frame.getStreamOffset();
+            blockSizes[i] = frame.getFrameSamples();
+        }
+    }
+
+    /**
+     * Read the index file.
+     * The first frame is stored in full, the others as the block size and
+     * the distance from the frame before, 6 bytes a frame.
+     *
+     * @return False if the index is for another version of the FLAC file
+     */
+    private boolean read(long length, long modified) throws IOException {
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (is.readInt() != MAGIC || is.readInt() != VERSION) throw new IOException("not a frame index");
+            if (is.readLong() != length || is.readLong() != modified) return false;
+            int count = is.readInt();
+            long[] samples = new long[count];
+            long[] offsets = new long[count];
+            int[] blockSizes = new int[count];
+            long sample = is.readLong();
+            long offset = is.readLong();
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    sample += blockSizes[i - 1];
+                    offset += is.readInt();
+                }
+                blockSizes[i] = is.readUnsignedShort() + 1;
+                samples[i] = sample;
+                offsets[i] = offset;
+            }
+            this.samples = samples;
+            this.offsets = offsets;
+            this.blockSizes = blockSizes;
+            this.count = count;
+            return true;
+        }
+    }
+
+    /**
+     * Write the index file, replacing the old one at once.
+     */
+    private void write(long length, long modified) throws IOException {
+        if (indexFile.getParent() != null) Files.createDirectories(indexFile.getParent());
+        Path temp = Files.createTempFile(indexFile.toAbsolutePath().getParent(), indexFile.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                os.writeInt(MAGIC);
+                os.writeInt(VERSION);
+                os.writeLong(length);
+                os.writeLong(modified);
+                os.writeInt(count);
+                os.writeLong(count > 0 ? samples[0] : 0);
+                os.writeLong(count > 0 ? offsets[0] : 0);
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) os.writeInt((int) (offsets[i] - offsets[i - 1]));
+                    os.writeShort(blockSizes[i] - 1);
+                }
+            }
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
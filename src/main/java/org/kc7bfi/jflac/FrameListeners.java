@@ -22,6 +22,8 @@ import org.kc7bfi.jflac.metadata.Metadata;
 class FrameListeners implements FrameListener {
 
     private final Set<FrameListener> frameListeners = new HashSet<>();
+    /** the listeners called, copied from the set when it changes so a call allocates nothing */
+    private FrameListener[] listeners = new FrameListener[0];
 
     /**
      * Add a frame listener.
@@ -31,6 +33,7 @@ class FrameListeners implements FrameListener {
     public void addFrameListener(FrameListener listener) {
         synchronized (frameListeners) {
             frameListeners.add(listener);
+            listeners = frameListeners.toArray(new FrameListener[0]);
         }
     }
 
@@ -42,6 +45,7 @@ class FrameListeners implements FrameListener {
     public void removeFrameListener(FrameListener listener) {
         synchronized (frameListeners) {
             frameListeners.remove(listener);
+            listeners = frameListeners.toArray(new FrameListener[0]);
         }
     }
 
@@ -54,7 +58,7 @@ class FrameListeners implements FrameListener {
     @Override
     public void processMetadata(Metadata metadata) {
         synchronized (frameListeners) {
-            for (FrameListener listener : frameListeners) {
+            for (FrameListener listener : listeners) {
                 listener.processMetadata(metadata);
             }
         }
@@ -69,7 +73,7 @@ class FrameListeners implements FrameListener {
     @Override
     public void processFrame(Frame frame) {
         synchronized (frameListeners) {
-            for (FrameListener listener : frameListeners) {
+            for (FrameListener listener : listeners) {
                 listener.processFrame(frame);
             }
         }
@@ -84,7 +88,7 @@ class FrameListeners implements FrameListener {
     @Override
     public void processError(String msg) {
         synchronized (frameListeners) {
-            for (FrameListener listener : frameListeners) {
+            for (FrameListener listener : listeners) {
                 listener.processError(msg);
             }
         }
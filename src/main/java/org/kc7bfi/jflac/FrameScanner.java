@@ -0,0 +1,125 @@
+/*
+ * libFLAC - Free Lossless Audio Codec library Copyright (C) 2000,2001,2002,2003
+ * Josh Coalson
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Library General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Library General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.kc7bfi.jflac;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kc7bfi.jflac.frame.BadHeaderException;
+import org.kc7bfi.jflac.frame.Header;
+import org.kc7bfi.jflac.io.BitInputStream;
+import org.kc7bfi.jflac.metadata.SeekPoint;
+import org.kc7bfi.jflac.metadata.StreamInfo;
+
+
+/**
+ * Scans the frames of a stream reading their headers only.
+ * <p>
+ * After a header the scanner jumps over the smallest frame size of the
+ * StreamInfo and looks for the next sync code, the subframes are never
+ * parsed. A sync code is taken when the CRC-8 of its header matches and
+ * its frame starts at the sample the previous frame ends at, so a false
+ * sync code in the residuals is passed over.
+ *
+ * @author kc7bfi
+ */
+public class FrameScanner {
+
+    private final BitInputStream bitStream;
+    private final StreamInfo streamInfo;
+    private final Header header = new Header();
+    private final byte[] headerWarmup = new byte[2];
+    /** the sample number the next frame starts at, -1 before the first frame */
+    private long nextSample = -1;
+
+    /**
+     * The constructor.
+     * The frames are read from the bit stream of the decoder, its metadata must
+     * have been read. The decoder can not decode the frames scanned anymore,
+     * unless it is positioned again.
+     *
+     * @param decoder The decoder after {@link FLACDecoder#readMetadata()}
+     * @throws IllegalStateException if the decoder has no StreamInfo
+     */
+    public FrameScanner(FLACDecoder decoder) {
+        if (decoder.getStreamInfo() == null) throw new IllegalStateException("no StreamInfo, read the metadata first");
+        this.bitStream = decoder.getBitInputStream();
+        this.streamInfo = decoder.getStreamInfo();
+    }
+
+    /**
+     * Scan the next frame.
+     *
+     * @return The sample number, the position in the source and the number of
+     *         samples of the frame, null at the end of the stream
+     * @throws IOException On read error
+     */
+    public SeekPoint nextFrame() throws IOException {
+        long totalSamples = streamInfo.getTotalSamples();
+        if (totalSamples > 0 && nextSample >= totalSamples) return null;
+        try {
+            while (true) {
+                bitStream.skipToFrameSync();
+                long position = bitStream.getPosition();
+                headerWarmup[0] = (byte) bitStream.readRawUInt(8);
+                headerWarmup[1] = (byte) bitStream.readRawUInt(8);
+                try {
+                    header.read(bitStream, headerWarmup, streamInfo, true);
+                } catch (BadHeaderException e) {
+                    resync(position);
+                    continue;
+                }
+                if (nextSample >= 0 && header.sampleNumber != nextSample) {
+                    resync(position);
+                    continue;
+                }
+                nextSample = header.sampleNumber + header.blockSize;
+                // no frame is shorter than the smallest frame size
+                long skip = position + streamInfo.getMinFrameSize() - bitStream.getPosition();
+                if (skip > 0) bitStream.readByteBlockAlignedNoCRC(null, (int) skip);
+                return new SeekPoint(header.sampleNumber, position, header.blockSize);
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Scan the frames up to the end of the stream.
+     *
+     * @return The frames, see {@link #nextFrame()}
+     * @throws IOException On read error
+     */
+    public List<SeekPoint> scan() throws IOException {
+        List<SeekPoint> frames = new ArrayList<>();
+        SeekPoint frame;
+        while ((frame = nextFrame()) != null) {
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    /** look for a sync code again right after a false one */
+    private void resync(long position) throws IOException {
+        if (bitStream.getSource().isSeekable()) bitStream.seek(position + 1);
+    }
+}
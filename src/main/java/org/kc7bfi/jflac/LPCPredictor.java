@@ -22,6 +22,10 @@ package org.kc7bfi.jflac;
 
 /**
  * LPC Predictor utility class.
+ * <p>
+ * The signal is restored by a kernel specialized for the predictor order,
+ * up to the largest order of subset streams, with the coefficients kept in
+ * locals. Higher orders take a loop over the order.
  *
  * @author kc7bfi
  */
@@ -39,27 +43,25 @@ public class LPCPredictor {
      * @param startAt        The starting position in the data array
      */
     public static void restoreSignal(int[] residual, int dataLen, int[] qlpCoeff, int order, int lpQuantization, int[] data, int startAt) {
-//        logger.log(Level.DEBUG, "Q=" + lpQuantization);
-        for (int i = 0; i < dataLen; i++) {
-            int sum = 0;
-            for (int j = 0; j < order; j++) {
-                sum += qlpCoeff[j] * data[startAt + i - j - 1];
-            }
-//            if (logger.isLoggable(Level.DEBUG)) System.out.print((sum >> lpQuantization) + " ");
-            data[startAt + i] = residual[i] + (sum >> lpQuantization);
+        switch (order) {
+        case 1 -> restoreSignal1(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 2 -> restoreSignal2(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 3 -> restoreSignal3(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 4 -> restoreSignal4(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 5 -> restoreSignal5(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 6 -> restoreSignal6(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 7 -> restoreSignal7(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 8 -> restoreSignal8(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 9 -> restoreSignal9(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 10 -> restoreSignal10(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 11 -> restoreSignal11(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 12 -> restoreSignal12(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        default -> restoreSignalN(residual, dataLen, qlpCoeff, order, lpQuantization, data, startAt);
         }
-//        if (logger.isLoggable(Level.DEBUG)) {
-//            System.out.println();
-//            for (int i = 0; i < dataLen + startAt; i++) System.out.print(data[i] + " ");
-//            System.out.println();
-//            for (int j = 0; j < order; j++) System.out.print(qlpCoeff[j] + " ");
-//            System.out.println();
-//            System.exit(1);
-//        }
     }
 
     /**
-     * Restore the signal from the LPC compression.
+     * Restore the signal from the LPC compression, summing in 64 bits.
      *
      * @param residual       The residual signal
      * @param dataLen        The length of the residual data
@@ -70,6 +72,36 @@ public class LPCPredictor {
      * @param startAt        The starting position in the data array
      */
     public static void restoreSignalWide(int[] residual, int dataLen, int[] qlpCoeff, int order, int lpQuantization, int[] data, int startAt) {
+        switch (order) {
+        case 1 -> restoreSignalWide1(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 2 -> restoreSignalWide2(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 3 -> restoreSignalWide3(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 4 -> restoreSignalWide4(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 5 -> restoreSignalWide5(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 6 -> restoreSignalWide6(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 7 -> restoreSignalWide7(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 8 -> restoreSignalWide8(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 9 -> restoreSignalWide9(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 10 -> restoreSignalWide10(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 11 -> restoreSignalWide11(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        case 12 -> restoreSignalWide12(residual, dataLen, qlpCoeff, lpQuantization, data, startAt);
+        default -> restoreSignalWideN(residual, dataLen, qlpCoeff, order, lpQuantization, data, startAt);
+        }
+    }
+
+    /** any order, for the orders without a kernel of their own */
+    private static void restoreSignalN(int[] residual, int dataLen, int[] qlpCoeff, int order, int lpQuantization, int[] data, int startAt) {
+        for (int i = 0; i < dataLen; i++) {
+            int sum = 0;
+            for (int j = 0; j < order; j++) {
+                sum += qlpCoeff[j] * data[startAt + i - j - 1];
+            }
+            data[startAt + i] = residual[i] + (sum >> lpQuantization);
+        }
+    }
+
+    /** any order, for the orders without a kernel of their own */
+    private static void restoreSignalWideN(int[] residual, int dataLen, int[] qlpCoeff, int order, int lpQuantization, int[] data, int startAt) {
         for (int i = 0; i < dataLen; i++) {
             long sum = 0;
             for (int j = 0; j < order; j++)
@@ -77,4 +109,232 @@ public class LPCPredictor {
             data[startAt + i] = residual[i] + (int) (sum >> lpQuantization);
         }
     }
+
+    private static void restoreSignal1(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        int c0 = qlpCoeff[0];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            data[k] = residual[i] + ((c0 * data[k - 1]) >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignal2(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        int c0 = qlpCoeff[0], c1 = qlpCoeff[1];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            data[k] = residual[i] + ((c0 * data[k - 1] + c1 * data[k - 2]) >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignal3(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            data[k] = residual[i] + ((c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3]) >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignal4(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            data[k] = residual[i] + ((c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3] + c3 * data[k - 4]) >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignal5(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3], c4 = qlpCoeff[4];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            int sum = c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3] + c3 * data[k - 4]
+                    + c4 * data[k - 5];
+            data[k] = residual[i] + (sum >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignal6(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3], c4 = qlpCoeff[4], c5 = qlpCoeff[5];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            int sum = c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3] + c3 * data[k - 4]
+                    + c4 * data[k - 5] + c5 * data[k - 6];
+            data[k] = residual[i] + (sum >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignal7(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3],
+            c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            int sum = c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3] + c3 * data[k - 4]
+                    + c4 * data[k - 5] + c5 * data[k - 6] + c6 * data[k - 7];
+            data[k] = residual[i] + (sum >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignal8(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3],
+            c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            int sum = c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3] + c3 * data[k - 4]
+                    + c4 * data[k - 5] + c5 * data[k - 6] + c6 * data[k - 7] + c7 * data[k - 8];
+            data[k] = residual[i] + (sum >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignal9(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3],
+            c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7],
+            c8 = qlpCoeff[8];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            int sum = c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3] + c3 * data[k - 4]
+                    + c4 * data[k - 5] + c5 * data[k - 6] + c6 * data[k - 7] + c7 * data[k - 8]
+                    + c8 * data[k - 9];
+            data[k] = residual[i] + (sum >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignal10(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3],
+            c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7],
+            c8 = qlpCoeff[8], c9 = qlpCoeff[9];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            int sum = c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3] + c3 * data[k - 4]
+                    + c4 * data[k - 5] + c5 * data[k - 6] + c6 * data[k - 7] + c7 * data[k - 8]
+                    + c8 * data[k - 9] + c9 * data[k - 10];
+            data[k] = residual[i] + (sum >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignal11(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3],
+            c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7],
+            c8 = qlpCoeff[8], c9 = qlpCoeff[9], c10 = qlpCoeff[10];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            int sum = c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3] + c3 * data[k - 4]
+                    + c4 * data[k - 5] + c5 * data[k - 6] + c6 * data[k - 7] + c7 * data[k - 8]
+                    + c8 * data[k - 9] + c9 * data[k - 10] + c10 * data[k - 11];
+            data[k] = residual[i] + (sum >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignal12(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3],
+            c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7],
+            c8 = qlpCoeff[8], c9 = qlpCoeff[9], c10 = qlpCoeff[10], c11 = qlpCoeff[11];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            int sum = c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3] + c3 * data[k - 4]
+                    + c4 * data[k - 5] + c5 * data[k - 6] + c6 * data[k - 7] + c7 * data[k - 8]
+                    + c8 * data[k - 9] + c9 * data[k - 10] + c10 * data[k - 11] + c11 * data[k - 12];
+            data[k] = residual[i] + (sum >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignalWide1(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        long c0 = qlpCoeff[0];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            data[k] = residual[i] + (int) ((c0 * data[k - 1]) >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignalWide2(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        long c0 = qlpCoeff[0], c1 = qlpCoeff[1];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            data[k] = residual[i] + (int) ((c0 * data[k - 1] + c1 * data[k - 2]) >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignalWide3(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            data[k] = residual[i] + (int) ((c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3]) >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignalWide4(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            data[k] = residual[i] + (int) ((c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3] + c3 * data[k - 4]) >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignalWide5(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3], c4 = qlpCoeff[4];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            long sum = c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3] + c3 * data[k - 4]
+                    + c4 * data[k - 5];
+            data[k] = residual[i] + (int) (sum >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignalWide6(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3], c4 = qlpCoeff[4], c5 = qlpCoeff[5];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            long sum = c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3] + c3 * data[k - 4]
+                    + c4 * data[k - 5] + c5 * data[k - 6];
+            data[k] = residual[i] + (int) (sum >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignalWide7(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3],
+             c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            long sum = c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3] + c3 * data[k - 4]
+                    + c4 * data[k - 5] + c5 * data[k - 6] + c6 * data[k - 7];
+            data[k] = residual[i] + (int) (sum >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignalWide8(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3],
+             c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            long sum = c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3] + c3 * data[k - 4]
+                    + c4 * data[k - 5] + c5 * data[k - 6] + c6 * data[k - 7] + c7 * data[k - 8];
+            data[k] = residual[i] + (int) (sum >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignalWide9(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3],
+             c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7],
+             c8 = qlpCoeff[8];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            long sum = c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3] + c3 * data[k - 4]
+                    + c4 * data[k - 5] + c5 * data[k - 6] + c6 * data[k - 7] + c7 * data[k - 8]
+                    + c8 * data[k - 9];
+            data[k] = residual[i] + (int) (sum >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignalWide10(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3],
+             c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7],
+             c8 = qlpCoeff[8], c9 = qlpCoeff[9];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            long sum = c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3] + c3 * data[k - 4]
+                    + c4 * data[k - 5] + c5 * data[k - 6] + c6 * data[k - 7] + c7 * data[k - 8]
+                    + c8 * data[k - 9] + c9 * data[k - 10];
+            data[k] = residual[i] + (int) (sum >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignalWide11(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3],
+             c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7],
+             c8 = qlpCoeff[8], c9 = qlpCoeff[9], c10 = qlpCoeff[10];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            long sum = c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3] + c3 * data[k - 4]
+                    + c4 * data[k - 5] + c5 * data[k - 6] + c6 * data[k - 7] + c7 * data[k - 8]
+                    + c8 * data[k - 9] + c9 * data[k - 10] + c10 * data[k - 11];
+            data[k] = residual[i] + (int) (sum >> lpQuantization);
+        }
+    }
+
+    private static void restoreSignalWide12(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3],
+             c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7],
+             c8 = qlpCoeff[8], c9 = qlpCoeff[9], c10 = qlpCoeff[10], c11 = qlpCoeff[11];
+        for (int i = 0, k = startAt; i < dataLen; i++, k++) {
+            long sum = c0 * data[k - 1] + c1 * data[k - 2] + c2 * data[k - 3] + c3 * data[k - 4]
+                    + c4 * data[k - 5] + c5 * data[k - 6] + c6 * data[k - 7] + c7 * data[k - 8]
+                    + c8 * data[k - 9] + c9 * data[k - 10] + c10 * data[k - 11] + c11 * data[k - 12];
+            data[k] = residual[i] + (int) (sum >> lpQuantization);
+        }
+    }
 }
@@ -29,6 +29,8 @@ public interface PCMProcessor {
 
     /**
      * Called when each data frame is decompressed.
+     * The PCM data is new for each frame unless the decoder reuses it,
+     * see {@link FLACDecoder#setReusePCMData(boolean)}.
      *
      * @param pcm The decompressed PCM data
      */
@@ -22,6 +22,8 @@ import org.kc7bfi.jflac.util.ByteData;
 class PCMProcessors implements PCMProcessor {
 
     private final Set<PCMProcessor> pcmProcessors = new HashSet<>();
+    /** the processors called, copied from the set when it changes so a call allocates nothing */
+    private PCMProcessor[] processors = new PCMProcessor[0];
 
     /**
      * Add a PCM processor.
@@ -31,6 +33,7 @@ class PCMProcessors implements PCMProcessor {
     public void addPCMProcessor(PCMProcessor processor) {
         synchronized (pcmProcessors) {
             pcmProcessors.add(processor);
+            processors = pcmProcessors.toArray(new PCMProcessor[0]);
         }
     }
 
@@ -42,6 +45,7 @@ class PCMProcessors implements PCMProcessor {
     public void removePCMProcessor(PCMProcessor processor) {
         synchronized (pcmProcessors) {
             pcmProcessors.remove(processor);
+            processors = pcmProcessors.toArray(new PCMProcessor[0]);
         }
     }
 
@@ -54,7 +58,7 @@ class PCMProcessors implements PCMProcessor {
     @Override
     public void processStreamInfo(StreamInfo info) {
         synchronized (pcmProcessors) {
-            for (PCMProcessor processor : pcmProcessors) {
+            for (PCMProcessor processor : processors) {
                 processor.processStreamInfo(info);
             }
         }
@@ -69,7 +73,7 @@ class PCMProcessors implements PCMProcessor {
     @Override
     public void processPCM(ByteData pcm) {
         synchronized (pcmProcessors) {
-            for (PCMProcessor processor : pcmProcessors) {
+            for (PCMProcessor processor : processors) {
                 processor.processPCM(pcm);
             }
         }
@@ -0,0 +1,71 @@
+/*
+ * libFLAC - Free Lossless Audio Codec library Copyright (C) 2000,2001,2002,2003
+ * Josh Coalson
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Library General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Library General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package org.kc7bfi.jflac;
+
+import org.kc7bfi.jflac.metadata.StreamInfo;
+
+
+/**
+ * SampleProcessor interface.
+ * This interface defines the signatures for a class to listen
+ * to decoded samples, planar and not packed into PCM bytes.
+ * <p>
+ * The sample arrays are the decoder's own and are filled again for the
+ * next frame, they must not be modified and are only valid during the call.
+ *
+ * @author kc7bfi
+ */
+public interface SampleProcessor {
+
+    /**
+     * Called when StreamInfo read.
+     *
+     * @param streamInfo The FLAC stream info metadata block
+     */
+    void processStreamInfo(StreamInfo streamInfo);
+
+    /**
+     * Called when each data frame is decompressed, unless {@link #isFloat()}.
+     *
+     * @param samples The samples of each channel, the arrays may be longer than count
+     * @param count   The number of samples per channel
+     */
+    default void processSamples(int[][] samples, int count) {
+    }
+
+    /**
+     * Called when each data frame is decompressed, if {@link #isFloat()}.
+     *
+     * @param samples The samples of each channel from -1 to 1, the arrays may be longer than count
+     * @param count   The number of samples per channel
+     */
+    default void processSamples(float[][] samples, int count) {
+    }
+
+    /**
+     * Tell which of the processSamples methods is called.
+     *
+     * @return True to get float samples, false to get int samples
+     */
+    default boolean isFloat() {
+        return false;
+    }
+}
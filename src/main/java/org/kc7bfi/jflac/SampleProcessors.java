@@ -0,0 +1,124 @@
+/*
+ * libFLAC - Free Lossless Audio Codec library Copyright (C) 2000,2001,2002,2003
+ * Josh Coalson
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Library General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Library General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package org.kc7bfi.jflac;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.kc7bfi.jflac.metadata.StreamInfo;
+
+
+/**
+ * Class to handle sample processors.
+ *
+ * @author kc7bfi
+ */
+class SampleProcessors {
+
+    private final Set<SampleProcessor> sampleProcessors = new HashSet<>();
+    /** the processors called, copied from the set when it changes so a call allocates nothing */
+    private SampleProcessor[] processors = new SampleProcessor[0];
+    /** the float samples, converted once a frame for all the processors wanting them */
+    private float[][] floats = new float[0][];
+
+    /**
+     * Add a sample processor.
+     *
+     * @param processor The processor listener to add
+     */
+    public void addSampleProcessor(SampleProcessor processor) {
+        synchronized (sampleProcessors) {
+            sampleProcessors.add(processor);
+            processors = sampleProcessors.toArray(new SampleProcessor[0]);
+        }
+    }
+
+    /**
+     * Remove a sample processor.
+     *
+     * @param processor The processor listener to remove
+     */
+    public void removeSampleProcessor(SampleProcessor processor) {
+        synchronized (sampleProcessors) {
+            sampleProcessors.remove(processor);
+            processors = sampleProcessors.toArray(new SampleProcessor[0]);
+        }
+    }
+
+    /**
+     * Process the StreamInfo block.
+     *
+     * @param info the StreamInfo block
+     */
+    public void processStreamInfo(StreamInfo info) {
+        synchronized (sampleProcessors) {
+            for (SampleProcessor processor : processors) {
+                processor.processStreamInfo(info);
+            }
+        }
+    }
+
+    /**
+     * Process the decoded samples.
+     *
+     * @param samples       The samples of each channel
+     * @param count         The number of samples per channel
+     * @param bitsPerSample The sample size, to scale the float samples
+     */
+    public void processSamples(int[][] samples, int count, int bitsPerSample) {
+        synchronized (sampleProcessors) {
+            boolean converted = false;
+            for (SampleProcessor processor : processors) {
+                if (processor.isFloat()) {
+                    if (!converted) {
+                        toFloat(samples, count, bitsPerSample);
+                        converted = true;
+                    }
+                    processor.processSamples(floats, count);
+                } else {
+                    processor.processSamples(samples, count);
+                }
+            }
+        }
+    }
+
+    /** convert to floats from -1 to 1 */
+    private void toFloat(int[][] samples, int count, int bitsPerSample) {
+        if (floats.length != samples.length) {
+            floats = new float[samples.length][];
+        }
+        float scale = 1f / (1 << (bitsPerSample - 1));
+        for (int channel = 0; channel < samples.length; channel++) {
+            if (floats[channel] == null || floats[channel].length < count) {
+                floats[channel] = new float[count];
+            }
+            int[] in = samples[channel];
+            float[] out = floats[channel];
+            for (int i = 0; i < count; i++) {
+                out[i] = in[i] * scale;
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return processors.length == 0;
+    }
+}
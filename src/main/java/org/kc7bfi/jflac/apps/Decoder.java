@@ -54,6 +54,7 @@ public class Decoder implements PCMProcessor {
         wav = new WavWriter(os);
         FLACDecoder decoder = new FLACDecoder(is);
         decoder.addPCMProcessor(this);
+        decoder.setReusePCMData(true);
         decoder.decode();
     }
 
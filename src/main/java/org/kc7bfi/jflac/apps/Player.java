@@ -67,6 +67,7 @@ public class Player implements PCMProcessor {
 
         FLACDecoder decoder = new FLACDecoder(is);
         decoder.addPCMProcessor(this);
+        decoder.setReusePCMData(true);
         try {
             decoder.decode();
         } catch (EOFException e) {
@@ -67,6 +67,7 @@ public class SeekTablePlayer implements PCMProcessor, FrameListener {
 
         FLACDecoder decoder = new FLACDecoder(is);
         decoder.addPCMProcessor(this);
+        decoder.setReusePCMData(true);
         decoder.addFrameListener(this);
         decoder.readMetadata();
 
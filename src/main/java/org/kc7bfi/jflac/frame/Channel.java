@@ -42,10 +42,16 @@ public abstract class Channel {
     public static final int ENTROPY_CODING_METHOD_PARTITIONED_RICE2_ORDER_LEN = 5;
 
     /** The FLAC Frame Header. */
-    protected final Header header;
+    protected Header header;
 
     /** The number of waisted bits in the frame. */
-    protected final int wastedBits;
+    protected int wastedBits;
+
+    /**
+     * The constructor for a subframe to be read later.
+     */
+    protected Channel() {
+    }
 
     /**
      * The constructor.
@@ -37,14 +37,23 @@ public class ChannelFixed extends Channel {
 
     private static final int MAX_FIXED_ORDER = 4;
 
+    /** The residual coding methods, reused from read to read. */
+    private final EntropyPartitionedRice partitionedRice = new EntropyPartitionedRice();
+    private final EntropyPartitionedRice2 partitionedRice2 = new EntropyPartitionedRice2();
     /** The residual coding method. */
-    private final EntropyCodingMethod entropyCodingMethod;
+    private EntropyCodingMethod entropyCodingMethod;
     /** The polynomial order. */
-    private final int order;
+    private int order;
     /** Warmup samples to prime the predictor, length == order. */
     private final int[] warmup = new int[MAX_FIXED_ORDER];
     /** The residual signal, length == (blocksize minus order) samples. */
-    private final int[] residual;
+    private int[] residual;
+
+    /**
+     * The constructor for a subframe to be filled by {@link #read}.
+     */
+    public ChannelFixed() {
+    }
 
     /**
      * The constructor.
@@ -59,8 +68,24 @@ public class ChannelFixed extends Channel {
      * @throws FrameDecodeException
      */
     public ChannelFixed(BitInputStream is, Header header, ChannelData channelData, int bps, int wastedBits, int order) throws IOException, FrameDecodeException {
-        super(header, wastedBits);
+        read(is, header, channelData, bps, wastedBits, order);
+    }
 
+    /**
+     * Read the subframe, all the fields are overwritten so this object can be reused.
+     *
+     * @param is          The InputBitStream
+     * @param header      The FLAC Frame Header
+     * @param channelData The decoded channel data (output)
+     * @param bps         The bits-per-second
+     * @param wastedBits  The bits waisted in the frame
+     * @param order       The predicate order
+     * @throws IOException          Thrown if error reading from the InputBitStream
+     * @throws FrameDecodeException
+     */
+    public void read(BitInputStream is, Header header, ChannelData channelData, int bps, int wastedBits, int order) throws IOException, FrameDecodeException {
+        this.header = header;
+        this.wastedBits = wastedBits;
         this.residual = channelData.getResidual();
         this.order = order;
 
@@ -72,8 +97,8 @@ public class ChannelFixed extends Channel {
         // read entropy coding method info
         int type = is.readRawUInt(ENTROPY_CODING_METHOD_TYPE_LEN);
         EntropyCodingMethod pr = switch (type) {
-            case ENTROPY_CODING_METHOD_PARTITIONED_RICE -> new EntropyPartitionedRice();
-            case RESIDUAL_CODING_METHOD_PARTITIONED_RICE2 -> new EntropyPartitionedRice2();
+            case ENTROPY_CODING_METHOD_PARTITIONED_RICE -> partitionedRice;
+            case RESIDUAL_CODING_METHOD_PARTITIONED_RICE2 -> partitionedRice2;
             default -> throw new FrameDecodeException("STREAM_DECODER_UNPARSEABLE_STREAM, type:" + type);
         };
         entropyCodingMethod = pr;
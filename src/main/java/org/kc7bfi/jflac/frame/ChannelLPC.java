@@ -40,20 +40,29 @@ public class ChannelLPC extends Channel {
     private static final int SUBFRAME_LPC_QLP_SHIFT_LEN = 5; // bits
     private static final int MAX_LPC_ORDER = 32;
 
+    /** The residual coding methods, reused from read to read. */
+    private final EntropyPartitionedRice partitionedRice = new EntropyPartitionedRice();
+    private final EntropyPartitionedRice2 partitionedRice2 = new EntropyPartitionedRice2();
     /** The residual coding method. */
-    private final EntropyCodingMethod entropyCodingMethod;
+    private EntropyCodingMethod entropyCodingMethod;
     /** The FIR order. */
-    private final int order;
+    private int order;
     /** Quantized FIR filter coefficient precision in bits. */
-    private final int qlpCoeffPrecision;
+    private int qlpCoeffPrecision;
     /** The qlp coeff shift needed. */
-    private final int quantizationLevel;
+    private int quantizationLevel;
     /** FIR filter coefficients. */
     private final int[] qlpCoeff = new int[MAX_LPC_ORDER];
     /** Warmup samples to prime the predictor, length == order. */
     private final int[] warmup = new int[MAX_LPC_ORDER];
     /** The residual signal, length == (blocksize minus order) samples. */
-    private final int[] residual;
+    private int[] residual;
+
+    /**
+     * The constructor for a subframe to be filled by {@link #read}.
+     */
+    public ChannelLPC() {
+    }
 
     /**
      * The constructor.
@@ -68,8 +77,24 @@ public class ChannelLPC extends Channel {
      * @throws FrameDecodeException
      */
     public ChannelLPC(BitInputStream is, Header header, ChannelData channelData, int bps, int wastedBits, int order) throws IOException, FrameDecodeException {
-        super(header, wastedBits);
+        read(is, header, channelData, bps, wastedBits, order);
+    }
 
+    /**
+     * Read the subframe, all the fields are overwritten so this object can be reused.
+     *
+     * @param is          The InputBitStream
+     * @param header      The FLAC Frame Header
+     * @param channelData The decoded channel data (output)
+     * @param bps         The bits-per-second
+     * @param wastedBits  The bits waisted in the frame
+     * @param order       The predicate order
+     * @throws IOException          Thrown if error reading from the InputBitStream
+     * @throws FrameDecodeException
+     */
+    public void read(BitInputStream is, Header header, ChannelData channelData, int bps, int wastedBits, int order) throws IOException, FrameDecodeException {
+        this.header = header;
+        this.wastedBits = wastedBits;
         this.residual = channelData.getResidual();
         this.order = order;
 
@@ -102,10 +127,10 @@ public class ChannelLPC extends Channel {
         //logger.log(Level.DEBUG, "codingType="+codingType);
         switch (codingType) {
         case ENTROPY_CODING_METHOD_PARTITIONED_RICE:
-            entropyCodingMethod = new EntropyPartitionedRice();
+            entropyCodingMethod = partitionedRice;
             break;
         case RESIDUAL_CODING_METHOD_PARTITIONED_RICE2:
-            entropyCodingMethod = new EntropyPartitionedRice2();
+            entropyCodingMethod = partitionedRice2;
             break;
         default:
             throw new FrameDecodeException("STREAM_DECODER_UNPARSEABLE_STREAM, " + codingType);
@@ -129,10 +154,7 @@ public class ChannelLPC extends Channel {
         // decode the subframe
         System.arraycopy(warmup, 0, channelData.getOutput(), 0, order);
         if (bps + qlpCoeffPrecision + BitMath.ilog2(order) <= 32) {
-            if (bps <= 16 && qlpCoeffPrecision <= 16)
-                LPCPredictor.restoreSignal(channelData.getResidual(), header.blockSize - order, qlpCoeff, order, quantizationLevel, channelData.getOutput(), order);
-            else
-                LPCPredictor.restoreSignal(channelData.getResidual(), header.blockSize - order, qlpCoeff, order, quantizationLevel, channelData.getOutput(), order);
+            LPCPredictor.restoreSignal(channelData.getResidual(), header.blockSize - order, qlpCoeff, order, quantizationLevel, channelData.getOutput(), order);
         } else {
             LPCPredictor.restoreSignalWide(channelData.getResidual(), header.blockSize - order, qlpCoeff, order, quantizationLevel, channelData.getOutput(), order);
         }
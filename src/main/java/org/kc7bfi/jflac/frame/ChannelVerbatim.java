@@ -34,7 +34,13 @@ import org.kc7bfi.jflac.io.BitInputStream;
 public class ChannelVerbatim extends Channel {
 
     /** A pointer to verbatim signal. */
-    private final int[] data;
+    private int[] data;
+
+    /**
+     * The constructor for a subframe to be filled by {@link #read}.
+     */
+    public ChannelVerbatim() {
+    }
 
     /**
      * The constructor.
@@ -47,7 +53,22 @@ public class ChannelVerbatim extends Channel {
      * @throws IOException Thrown if error reading from the InputBitStream
      */
     public ChannelVerbatim(BitInputStream is, Header header, ChannelData channelData, int bps, int wastedBits) throws IOException {
-        super(header, wastedBits);
+        read(is, header, channelData, bps, wastedBits);
+    }
+
+    /**
+     * Read the subframe, all the fields are overwritten so this object can be reused.
+     *
+     * @param is          The InputBitStream
+     * @param header      The FLAC Frame Header
+     * @param channelData The decoded channel data (output)
+     * @param bps         The bits-per-second
+     * @param wastedBits  The bits waisted in the frame
+     * @throws IOException Thrown if error reading from the InputBitStream
+     */
+    public void read(BitInputStream is, Header header, ChannelData channelData, int bps, int wastedBits) throws IOException {
+        this.header = header;
+        this.wastedBits = wastedBits;
 
         data = channelData.getResidual();
 
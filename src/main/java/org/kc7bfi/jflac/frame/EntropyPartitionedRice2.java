@@ -60,9 +60,9 @@ public class EntropyPartitionedRice2 extends EntropyCodingMethod {
             } else {
                 riceParameter = is.readRawUInt(ENTROPY_CODING_METHOD_PARTITIONED_RICE2_RAW_LEN);
                 contents.rawBits[partition] = riceParameter;
-                for (int u = (partitionOrder == 0 || partition > 0) ? 0 : predictorOrder; u < partitionSamples; u++, sample++) {
-                    residual[sample] = is.readRawInt(riceParameter);
-                }
+                int u = (partitionOrder == 0 || partition > 0) ? partitionSamples : partitionSamples - predictorOrder;
+                is.readRawIntBlock(residual, sample, u, riceParameter);
+                sample += u;
             }
         }
     }
@@ -65,6 +65,15 @@ public class Header {
      */
     protected byte crc;
 
+    /** The raw header bytes read, for the CRC-8. */
+    private final ByteData rawHeader = new ByteData(16); // MAGIC NUMBER based on the maximum frame header size, including CRC
+
+    /**
+     * The constructor for a header to be filled by {@link #read}.
+     */
+    public Header() {
+    }
+
     /**
      * The constructor.
      *
@@ -75,9 +84,38 @@ public class Header {
      * @throws BadHeaderException Thrown if header is bad
      */
     public Header(BitInputStream is, byte[] headerWarmup, StreamInfo streamInfo) throws IOException, BadHeaderException {
+        this(is, headerWarmup, streamInfo, true);
+    }
+
+    /**
+     * The constructor.
+     *
+     * @param is           The InputBitStream
+     * @param headerWarmup The header warm-up bytes
+     * @param streamInfo   The FLAC Stream Info
+     * @param verifyCRC    False to skip the CRC-8 check
+     * @throws IOException        Thrown on error reading InputBitStream
+     * @throws BadHeaderException Thrown if header is bad
+     */
+    public Header(BitInputStream is, byte[] headerWarmup, StreamInfo streamInfo, boolean verifyCRC) throws IOException, BadHeaderException {
+        read(is, headerWarmup, streamInfo, verifyCRC);
+    }
+
+    /**
+     * Read the header, all the fields are overwritten so this object can be reused.
+     *
+     * @param is           The InputBitStream
+     * @param headerWarmup The header warm-up bytes
+     * @param streamInfo   The FLAC Stream Info
+     * @param verifyCRC    False to skip the CRC-8 check
+     * @throws IOException        Thrown on error reading InputBitStream
+     * @throws BadHeaderException Thrown if header is bad
+     */
+    public void read(BitInputStream is, byte[] headerWarmup, StreamInfo streamInfo, boolean verifyCRC) throws IOException, BadHeaderException {
         int blocksizeHint = 0;
         int sampleRateHint = 0;
-        ByteData rawHeader = new ByteData(16); // MAGIC NUMBER based on the maximum frame header size, including CRC
+        rawHeader.setLen(0);
+        frameNumber = -1;
         boolean isKnownVariableBlockSizeStream = (streamInfo != null && streamInfo.getMinBlockSize() != streamInfo.getMaxBlockSize());
         boolean isKnownFixedBlockSizeStream = (streamInfo != null && streamInfo.getMinBlockSize() == streamInfo.getMaxBlockSize());
 
@@ -287,7 +325,7 @@ public class Header {
         // read the CRC-8 byte
         byte crc8 = (byte) is.readRawUInt(8);
 
-        if (CRC8.calc(rawHeader.getData(), rawHeader.getLen()) != crc8) {
+        if (verifyCRC && CRC8.calc(rawHeader.getData(), rawHeader.getLen()) != crc8) {
             throw new BadHeaderException("STREAM_DECODER_ERROR_STATUS_BAD_HEADER");
         }
     }
@@ -22,6 +22,8 @@ package org.kc7bfi.jflac.io;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.kc7bfi.jflac.util.ByteData;
 import org.kc7bfi.jflac.util.CRC16;
@@ -29,26 +31,38 @@ import org.kc7bfi.jflac.util.CRC16;
 
 /**
  * Bit-wide input stream.
+ * <p>
+ * Bits are served from a 64-bit cache that is refilled from the byte buffer
+ * eight bytes at a time, so fields of up to 57 bits are extracted with a single
+ * shift and mask. The bytes come from a {@link ByteSource}, read in place
+ * from the buffer it returns.
  *
  * @author kc7bfi
  */
 public class BitInputStream {
 
-    private static final int BITS_PER_BLURB = 8;
-    private static final int BITS_PER_BLURB_LOG2 = 3;
-    private static final byte BLURB_TOP_BIT_ONE = ((byte) 0x80);
+    /** the maximum number of bits a single extraction from the cache may take */
+    private static final int MAX_CACHED_READ = 57;
 
-    private static final int BUFFER_CHUNK_SIZE = 1024;
-    private final byte[] buffer = new byte[BUFFER_CHUNK_SIZE];
+    /** big endian buffer returned by the source */
+    private ByteBuffer buffer = ByteBuffer.allocate(0);
+    /** end of the valid bytes of the buffer */
     private int putByte = 0;
+    /** next byte of the buffer to be loaded into the cache */
     private int getByte = 0;
-    private int getBit = 0;
-    private int availBits = 0;
+    /** unconsumed bits, left aligned, the bits below the valid ones are zero */
+    private long cache = 0;
+    /** the number of valid bits in the cache */
+    private int cacheBits = 0;
     private int totalBitsRead = 0;
 
     private short readCRC16 = 0;
+    /** next byte of the buffer to be added to the read CRC-16 */
+    private int crcByte = 0;
+    /** false skips the read CRC-16 computation altogether */
+    private boolean readCRC16Enabled = true;
 
-    private final InputStream inStream;
+    private final ByteSource source;
 
     /**
      * The constructor.
@@ -56,54 +70,225 @@ public class BitInputStream {
      * @param is The InputStream to read bits from
      */
     public BitInputStream(InputStream is) {
-        this.inStream = is;
+        this(new InputStreamSource(is));
+    }
+
+    /**
+     * The constructor.
+     *
+     * @param source The source to read bits from
+     */
+    public BitInputStream(ByteSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Return the source of the bytes read.
+     *
+     * @return The byte source
+     */
+    public ByteSource getSource() {
+        return source;
     }
 
     private int readFromStream() throws IOException {
-        // first shift the unconsumed buffer data toward the front as much as possible
-        if (getByte > 0 && putByte > getByte) {
-            System.arraycopy(buffer, getByte, buffer, 0, putByte - getByte);
+        updateCRC();
+
+        // the bytes still needed (cached or not yet in the CRC) start the new buffer
+        int kept = putByte - crcByte;
+        buffer = source.refill(buffer, crcByte, putByte);
+        getByte -= crcByte;
+        crcByte = 0;
+        int bytes = buffer.limit() - kept;
+        putByte = buffer.limit();
+        if (bytes <= 0) throw new EOFException();
+        return bytes;
+    }
+
+    /**
+     * Load as many whole bytes as fit from the buffer into the cache.
+     */
+    private void loadCache() {
+        int room = (64 - cacheBits) >>> 3;
+        if (room == 0) return;
+        if (putByte - getByte >= 8) {
+            long word = buffer.getLong(getByte);
+            word &= -1L << (64 - (room << 3));
+            cache |= word >>> cacheBits;
+            cacheBits += room << 3;
+            getByte += room;
+        } else {
+            while (room > 0 && getByte < putByte) {
+                cache |= (buffer.get(getByte++) & 0xffL) << (56 - cacheBits);
+                cacheBits += 8;
+                room--;
+            }
         }
-        putByte -= getByte;
-        getByte = 0;
+    }
 
-        // set the target for reading, taking into account blurb alignment
-        // blurb == byte, so no gyrations necessary:
-        int bytes = buffer.length - putByte;
+    /**
+     * Make sure the cache holds at least the given number of bits.
+     *
+     * @param bits The number of bits needed, at most {@link #MAX_CACHED_READ}
+     * @throws IOException Thrown if error reading input stream
+     */
+    private void fillCache(int bits) throws IOException {
+        loadCache();
+        while (cacheBits < bits) {
+            if (getByte >= putByte) readFromStream();
+            loadCache();
+        }
+    }
 
-        // finally, read in some data
-        bytes = inStream.read(buffer, putByte, bytes);
-        if (bytes <= 0) throw new EOFException();
+    /**
+     * Drop consumed bits from the cache.
+     *
+     * @param bits The number of bits consumed
+     */
+    private void consume(int bits) {
+        cache <<= bits;
+        cacheBits -= bits;
+        totalBitsRead += bits;
+    }
 
-        // now we have to handle partial blurb cases:
-        // blurb == byte, so no gyrations necessary:
-        putByte += bytes;
-        availBits += bytes << 3;
-        return bytes;
+    /**
+     * Add the bytes completely consumed since the last update to the read CRC-16.
+     * The CRC is not tracked while decoding, it is computed in bulk from the
+     * buffer when asked for or before the buffer is refilled.
+     */
+    private void updateCRC() {
+        int consumedByte = getByte - ((cacheBits + 7) >>> 3);
+        if (crcByte < consumedByte) {
+            if (readCRC16Enabled) readCRC16 = CRC16.updateBlock(buffer, crcByte, consumedByte - crcByte, readCRC16);
+            crcByte = consumedByte;
+        }
     }
 
+    /**
+     * Skip bytes from {@link #getPosition()}, a partly consumed byte is the
+     * first byte skipped. The skipped bytes are not added to the read CRC-16.
+     *
+     * @param skip The number of bytes to skip
+     * @throws IOException Thrown if error reading input stream
+     */
     public void skip(long skip) throws IOException {
-        while (skip > 0) skip -= inStream.skip(skip);
-        reset();
+        if (skip <= 0) return;
+        if (source.isSeekable()) {
+            seek(getPosition() + skip);
+            return;
+        }
+        if ((cacheBits & 7) != 0) {
+            updateCRC();
+            consume(cacheBits & 7);
+            crcByte = getByte - (cacheBits >>> 3);
+            skip--;
+        }
+        while (skip > 0) {
+            int chunk = (int) Math.min(skip, Integer.MAX_VALUE);
+            readByteBlockAlignedNoCRC(null, chunk);
+            skip -= chunk;
+        }
+    }
+
+    /**
+     * Skip the bytes up to the next frame sync code, a byte aligned 0xfff8 or 0xfff9.
+     * Bits of a partly consumed byte are dropped, the skipped bytes are not
+     * added to the read CRC-16. The buffer is searched eight bytes at a time
+     * for a 0xff byte, the bits of the frames are never parsed.
+     *
+     * @throws IOException Thrown if error reading input stream, EOFException if there is no sync code left
+     */
+    public void skipToFrameSync() throws IOException {
+        consume(cacheBits & 7);
+        updateCRC();
+        // the bytes still in the cache are searched in the buffer
+        getByte -= cacheBits >>> 3;
+        cache = 0;
+        cacheBits = 0;
+        while (true) {
+            int i = getByte;
+            int last = putByte - 1;
+            while (i < last) {
+                if (i + 8 <= last) {
+                    long word = ~buffer.getLong(i);
+                    if (((word - 0x0101_0101_0101_0101L) & ~word & 0x8080_8080_8080_8080L) == 0) {
+                        i += 8;
+                        continue;
+                    }
+                }
+                if (buffer.get(i) == (byte) 0xff && (buffer.get(i + 1) & 0xfe) == 0xf8) {
+                    totalBitsRead += (i - getByte) << 3;
+                    getByte = i;
+                    crcByte = i;
+                    return;
+                }
+                i++;
+            }
+            // the last byte may start a sync code, it is kept for the next buffer
+            i = Math.max(getByte, last);
+            totalBitsRead += (i - getByte) << 3;
+            getByte = i;
+            crcByte = i;
+            readFromStream();
+        }
     }
 
     /**
-     * Reset the bit stream.
+     * Reset the bit stream, the bytes not consumed yet are dropped.
      */
     public void reset() {
+        updateCRC();
+        getByte = putByte;
+        crcByte = putByte;
+        cache = 0;
+        cacheBits = 0;
+    }
+
+    /**
+     * Return the position in the source of the first byte not completely consumed.
+     *
+     * @return The source position
+     * @throws IOException Thrown if error reading input stream
+     */
+    public long getPosition() throws IOException {
+        return source.getPosition() - putByte + getByte - ((cacheBits + 7) >>> 3);
+    }
+
+    /**
+     * Position the bit stream at a byte of the source.
+     *
+     * @param position The position in the source
+     * @throws IOException Thrown if the source can not be positioned
+     */
+    public void seek(long position) throws IOException {
+        updateCRC();
+        source.seek(position);
         getByte = 0;
-        getBit = 0;
         putByte = 0;
-        availBits = 0;
+        crcByte = 0;
+        cache = 0;
+        cacheBits = 0;
     }
 
     /**
-     * Reset the read CRC-16 value.
+     * Reset the read CRC-16 value, the CRC covers the bytes consumed from here on.
      *
      * @param seed The initial CRC-16 value
      */
     public void resetReadCRC16(short seed) {
         readCRC16 = seed;
+        crcByte = getByte - ((cacheBits + 7) >>> 3);
+    }
+
+    /**
+     * Enable or disable the read CRC-16 computation.
+     * While disabled {@link #getReadCRC16()} does not change.
+     *
+     * @param enabled False to skip the CRC-16 computation
+     */
+    public void setReadCRC16Enabled(boolean enabled) {
+        updateCRC();
+        readCRC16Enabled = enabled;
     }
 
     /**
@@ -112,6 +297,7 @@ public class BitInputStream {
      * @return The read CRC-16 value
      */
     public short getReadCRC16() {
+        updateCRC();
         return readCRC16;
     }
 
@@ -121,7 +307,7 @@ public class BitInputStream {
      * @return True of bit stream consumed bits is byte aligned
      */
     public boolean isConsumedByteAligned() {
-        return ((getBit & 7) == 0);
+        return ((cacheBits & 7) == 0);
     }
 
     /**
@@ -130,7 +316,7 @@ public class BitInputStream {
      * @return The number of bits to align the byte
      */
     public int bitsLeftForByteAlignment() {
-        return 8 - (getBit & 7);
+        return 8 - (-cacheBits & 7);
     }
 
     /**
@@ -139,7 +325,7 @@ public class BitInputStream {
      * @return The number of bytes left to read
      */
     public int getInputBytesUnconsumed() {
-        return availBits >> 3;
+        return (cacheBits >> 3) + putByte - getByte;
     }
 
     /**
@@ -150,9 +336,9 @@ public class BitInputStream {
      */
     public void skipBitsNoCRC(int bits) throws IOException {
         if (bits == 0) return;
-        int bitsToAlign = getBit & 7;
+        int bitsToAlign = cacheBits & 7;
         if (bitsToAlign != 0) {
-            int bitsToTake = Math.min(8 - bitsToAlign, bits);
+            int bitsToTake = Math.min(bitsToAlign, bits);
             readRawUInt(bitsToTake);
             bits -= bitsToTake;
         }
@@ -173,22 +359,10 @@ public class BitInputStream {
      * @throws IOException Thrown if error reading input stream
      */
     public int readBit() throws IOException {
-        while (true) {
-            if (availBits > 0) {
-                int val = ((buffer[getByte] & (0x80 >> getBit)) != 0) ? 1 : 0;
-                getBit++;
-                if (getBit == BITS_PER_BLURB) {
-                    readCRC16 = CRC16.update(buffer[getByte], readCRC16);
-                    getByte++;
-                    getBit = 0;
-                }
-                availBits--;
-                totalBitsRead++;
-                return val;
-            } else {
-                readFromStream();
-            }
-        }
+        if (cacheBits == 0) fillCache(1);
+        int val = (int) (cache >>> 63);
+        consume(1);
+        return val;
     }
 
     /**
@@ -201,23 +375,7 @@ public class BitInputStream {
      * @throws IOException Thrown if error reading input stream
      */
     public int readBitToInt(int val) throws IOException {
-        while (true) {
-            if (availBits > 0) {
-                val <<= 1;
-                val |= ((buffer[getByte] & (0x80 >> getBit)) != 0) ? 1 : 0;
-                getBit++;
-                if (getBit == BITS_PER_BLURB) {
-                    readCRC16 = CRC16.update(buffer[getByte], readCRC16);
-                    getByte++;
-                    getBit = 0;
-                }
-                availBits--;
-                totalBitsRead++;
-                return val;
-            } else {
-                readFromStream();
-            }
-        }
+        return (val << 1) | readBit();
     }
 
     /**
@@ -231,20 +389,8 @@ public class BitInputStream {
      * @throws IOException Thrown if error reading input stream
      */
     public int peekBitToInt(int val, int bit) throws IOException {
-        while (true) {
-            if (bit < availBits) {
-                val <<= 1;
-                if ((getBit + bit) >= BITS_PER_BLURB) {
-                    bit = (getBit + bit) % BITS_PER_BLURB;
-                    val |= ((buffer[getByte + 1] & (0x80 >> bit)) != 0) ? 1 : 0;
-                } else {
-                    val |= ((buffer[getByte] & (0x80 >> (getBit + bit))) != 0) ? 1 : 0;
-                }
-                return val;
-            } else {
-                readFromStream();
-            }
-        }
+        if (cacheBits <= bit) fillCache(bit + 1);
+        return (val << 1) | (int) ((cache << bit) >>> 63);
     }
 
     /**
@@ -257,23 +403,7 @@ public class BitInputStream {
      * @throws IOException Thrown if error reading input stream
      */
     public long readBitToLong(long val) throws IOException {
-        while (true) {
-            if (availBits > 0) {
-                val <<= 1;
-                val |= ((buffer[getByte] & (0x80 >> getBit)) != 0) ? 1 : 0;
-                getBit++;
-                if (getBit == BITS_PER_BLURB) {
-                    readCRC16 = CRC16.update(buffer[getByte], readCRC16);
-                    getByte++;
-                    getBit = 0;
-                }
-                availBits--;
-                totalBitsRead++;
-                return val;
-            } else {
-                readFromStream();
-            }
-        }
+        return (val << 1) | readBit();
     }
 
     /**
@@ -284,10 +414,10 @@ public class BitInputStream {
      * @throws IOException Thrown if error reading input stream
      */
     public int readRawUInt(int bits) throws IOException {
-        int val = 0;
-        for (int i = 0; i < bits; i++) {
-            val = readBitToInt(val);
-        }
+        if (bits <= 0) return 0;
+        if (cacheBits < bits) fillCache(bits);
+        int val = (int) (cache >>> (64 - bits));
+        consume(bits);
         return val;
     }
 
@@ -299,11 +429,9 @@ public class BitInputStream {
      * @throws IOException Thrown if error reading input stream
      */
     public int peekRawUInt(int bits) throws IOException {
-        int val = 0;
-        for (int i = 0; i < bits; i++) {
-            val = peekBitToInt(val, i);
-        }
-        return val;
+        if (bits <= 0) return 0;
+        if (cacheBits < bits) fillCache(bits);
+        return (int) (cache >>> (64 - bits));
     }
 
     /**
@@ -314,24 +442,11 @@ public class BitInputStream {
      * @throws IOException Thrown if error reading input stream
      */
     public int readRawInt(int bits) throws IOException {
-        if (bits == 0) {
-            return 0;
-        }
-        int uval = 0;
-        for (int i = 0; i < bits; i++) {
-            uval = readBitToInt(uval);
-        }
-
-        // fix the sign
-        int val;
-        int bitsToleft = 32 - bits;
-        if (bitsToleft != 0) {
-            uval <<= bitsToleft;
-            val = uval;
-            val >>= bitsToleft;
-        } else {
-            val = uval;
-        }
+        if (bits <= 0) return 0;
+        if (cacheBits < bits) fillCache(bits);
+        // arithmetic shift fixes the sign
+        int val = (int) (cache >> (64 - bits));
+        consume(bits);
         return val;
     }
 
@@ -343,10 +458,14 @@ public class BitInputStream {
      * @throws IOException Thrown if error reading input stream
      */
     public long readRawULong(int bits) throws IOException {
-        long val = 0;
-        for (int i = 0; i < bits; i++) {
-            val = readBitToLong(val);
+        if (bits <= 0) return 0;
+        if (bits > MAX_CACHED_READ) {
+            long hi = readRawULong(bits - 32);
+            return (hi << 32) | (readRawUInt(32) & 0xffff_ffffL);
         }
+        if (cacheBits < bits) fillCache(bits);
+        long val = cache >>> (64 - bits);
+        consume(bits);
         return val;
     }
 
@@ -375,18 +494,27 @@ public class BitInputStream {
      * @throws IOException Thrown if error reading input stream
      */
     public void readByteBlockAlignedNoCRC(byte[] val, int nvals) throws IOException {
+        updateCRC();
         int destlength = nvals;
-        while (nvals > 0) {
+        // first hand out the bytes already in the cache
+        while (nvals > 0 && cacheBits >= 8) {
+            if (val != null) val[destlength - nvals] = (byte) (cache >>> 56);
+            cache <<= 8;
+            cacheBits -= 8;
+            totalBitsRead += 8;
+            nvals--;
+        }
+        while (true) {
+            crcByte = getByte - ((cacheBits + 7) >>> 3);
+            if (nvals <= 0) break;
             int chunk = Math.min(nvals, putByte - getByte);
             if (chunk <= 0) {
                 readFromStream();
             } else {
-                if (val != null) System.arraycopy(buffer, getByte, val, destlength - nvals, chunk);
+                if (val != null) buffer.get(getByte, val, destlength - nvals, chunk);
                 nvals -= chunk;
                 getByte += chunk;
-//                totalConsumedBits = (getByte << BITS_PER_BLURB_LOG2);
-                availBits -= (chunk << BITS_PER_BLURB_LOG2);
-                totalBitsRead += (chunk << BITS_PER_BLURB_LOG2);
+                totalBitsRead += (chunk << 3);
             }
         }
     }
@@ -400,15 +528,52 @@ public class BitInputStream {
     public int readUnaryUnsigned() throws IOException {
         int val = 0;
         while (true) {
-            int bit = readBit();
-            if (bit != 0) break;
-            val++;
+            if (cacheBits == 0) fillCache(1);
+            // the bits below the valid ones are always zero
+            int zeros = Long.numberOfLeadingZeros(cache);
+            if (zeros < cacheBits) {
+                // two steps, the code word may take the whole cache
+                cache <<= zeros;
+                cacheBits -= zeros;
+                totalBitsRead += zeros;
+                consume(1);
+                return val + zeros;
+            }
+            val += cacheBits;
+            consume(cacheBits);
+        }
+    }
+
+    /**
+     * Read a block of signed integers of the same width.
+     *
+     * @param vals  The values to be returned
+     * @param pos   The starting position in the vals array
+     * @param nvals The number of values to return
+     * @param bits  The number of bits of each value
+     * @throws IOException On read error
+     */
+    public void readRawIntBlock(int[] vals, int pos, int nvals, int bits) throws IOException {
+        if (bits <= 0) {
+            Arrays.fill(vals, pos, pos + nvals, 0);
+            return;
+        }
+        for (int end = pos + nvals; pos < end; pos++) {
+            if (cacheBits < bits) fillCache(bits);
+            vals[pos] = (int) (cache >> (64 - bits));
+            cache <<= bits;
+            cacheBits -= bits;
+            totalBitsRead += bits;
         }
-        return val;
     }
 
     /**
      * Read a Rice Signal Block.
+     * <p>
+     * Code words lying completely in the bit cache are decoded without
+     * leaving it: the unary part is counted with {@link Long#numberOfLeadingZeros(long)}
+     * and the binary part is taken with a single extraction. Only code words
+     * straddling a refill go through the bit-wise primitives.
      *
      * @param vals      The values to be returned
      * @param pos       The starting position in the vals array
@@ -417,198 +582,42 @@ public class BitInputStream {
      * @throws IOException On read error
      */
     public void readRiceSignedBlock(int[] vals, int pos, int nvals, int parameter) throws IOException {
-        int j, valI = 0;
-        int cbits = 0, uval = 0, msbs = 0, lsbsLeft = 0;
-        byte blurb, saveBlurb;
-        int state = 0; // 0 = getting unary MSBs, 1 = getting binary LSBs
-        if (nvals == 0) return;
-        int i = getByte;
-
-        long startBits = getByte * 8L + getBit;
-
-        // We unroll the main loop to take care of partially consumed blurbs here.
-        if (getBit > 0) {
-            saveBlurb = blurb = buffer[i];
-            cbits = getBit;
-            blurb <<= cbits;
-            while (true) {
-                if (state == 0) {
-                    if (blurb != 0) {
-                        for (j = 0; (blurb & BLURB_TOP_BIT_ONE) == 0; j++)
-                            blurb <<= 1;
-                        msbs += j;
-
-                        // dispose of the unary end bit
-                        blurb <<= 1;
-                        j++;
-                        cbits += j;
-                        uval = 0;
-                        lsbsLeft = parameter;
-                        state++;
-//                        totalBitsRead += msbs;
-                        if (cbits == BITS_PER_BLURB) {
-                            cbits = 0;
-                            readCRC16 = CRC16.update(saveBlurb, readCRC16);
-                            break;
-                        }
-                    } else {
-                        msbs += BITS_PER_BLURB - cbits;
-                        cbits = 0;
-                        readCRC16 = CRC16.update(saveBlurb, readCRC16);
-//                        totalBitsRead += msbs;
-                        break;
-                    }
-                } else {
-                    int availableBits = BITS_PER_BLURB - cbits;
-                    if (lsbsLeft >= availableBits) {
-                        uval <<= availableBits;
-                        uval |= ((blurb & 0xff) >> cbits);
-                        cbits = 0;
-                        readCRC16 = CRC16.update(saveBlurb, readCRC16);
-//                        totalBitsRead += availableBits;
-                        if (lsbsLeft == availableBits) {
-                            // compose the value
-                            uval |= (msbs << parameter);
-                            if ((uval & 1) != 0)
-                                vals[pos + valI++] = -((int) (uval >> 1)) - 1;
-                            else
-                                vals[pos + valI++] = uval >> 1;
-                            if (valI == nvals)
-                                break;
-                            msbs = 0;
-                            state = 0;
-                        }
-                        lsbsLeft -= availableBits;
-                        break;
-                    } else {
-                        uval <<= lsbsLeft;
-                        uval |= ((blurb & 0xff) >> (BITS_PER_BLURB - lsbsLeft));
-                        blurb <<= lsbsLeft;
-                        cbits += lsbsLeft;
-//                        totalBitsRead += lsbsLeft;
-                        // compose the value
-                        uval |= (msbs << parameter);
-                        if ((uval & 1) != 0)
-                            vals[pos + valI++] = -((int) (uval >> 1)) - 1;
-                        else
-                            vals[pos + valI++] = uval >> 1;
-                        if (valI == nvals) {
-                            // back up one if we exited the for loop because we
-                            // read all nvals but the end came in the middle of
-                            // a blurb
-                            i--;
-                            break;
-                        }
-                        msbs = 0;
-                        state = 0;
-                    }
+        int end = pos + nvals;
+        while (pos < end) {
+            if (cacheBits < MAX_CACHED_READ) loadCache();
+            long c = cache;
+            int n = cacheBits;
+            int from = pos;
+            if (parameter == 0) {
+                while (pos < end) {
+                    int zeros = Long.numberOfLeadingZeros(c);
+                    if (zeros >= n) break;
+                    c = c << zeros << 1;
+                    n -= zeros + 1;
+                    vals[pos++] = (zeros >> 1) ^ -(zeros & 1);
                 }
-            }
-            i++;
-            getByte = i;
-            getBit = cbits;
-//            totalConsumedBits = (i << BITS_PER_BLURB_LOG2) | cbits;
-//            totalBitsRead += (BITS_PER_BLURB) | cbits;
-        }
-
-        // Now that we are blurb-aligned the logic is slightly simpler
-        while (valI < nvals) {
-            for (; i < putByte && valI < nvals; i++) {
-                saveBlurb = blurb = buffer[i];
-                cbits = 0;
-                while (true) {
-                    if (state == 0) {
-                        if (blurb != 0) {
-                            for (j = 0; (blurb & BLURB_TOP_BIT_ONE) == 0; j++) blurb <<= 1;
-                            msbs += j;
-                            // dispose of the unary end bit
-                            blurb <<= 1;
-                            j++;
-                            cbits += j;
-                            uval = 0;
-                            lsbsLeft = parameter;
-                            state++;
-//                            totalBitsRead += msbs;
-                            if (cbits == BITS_PER_BLURB) {
-                                cbits = 0;
-                                readCRC16 = CRC16.update(saveBlurb, readCRC16);
-                                break;
-                            }
-                        } else {
-                            msbs += BITS_PER_BLURB - cbits;
-                            cbits = 0;
-                            readCRC16 = CRC16.update(saveBlurb, readCRC16);
-//                            totalBitsRead += msbs;
-                            break;
-                        }
-                    } else {
-                        int availableBits = BITS_PER_BLURB - cbits;
-                        if (lsbsLeft >= availableBits) {
-                            uval <<= availableBits;
-                            uval |= ((blurb & 0xff) >> cbits);
-                            cbits = 0;
-                            readCRC16 = CRC16.update(saveBlurb, readCRC16);
-//                            totalBitsRead += availableBits;
-                            if (lsbsLeft == availableBits) {
-                                // compose the value
-                                uval |= (msbs << parameter);
-                                if ((uval & 1) != 0)
-                                    vals[pos + valI++] = -((int) (uval >> 1)) - 1;
-                                else
-                                    vals[pos + valI++] = uval >> 1;
-                                if (valI == nvals)
-                                    break;
-                                msbs = 0;
-                                state = 0;
-                            }
-                            lsbsLeft -= availableBits;
-                            break;
-                        } else {
-                            uval <<= lsbsLeft;
-                            uval |= ((blurb & 0xff) >> (BITS_PER_BLURB - lsbsLeft));
-                            blurb <<= lsbsLeft;
-                            cbits += lsbsLeft;
-//                            totalBitsRead += lsbsLeft;
-                            // compose the value
-                            uval |= (msbs << parameter);
-                            if ((uval & 1) != 0)
-                                vals[pos + valI++] = -((int) (uval >> 1)) - 1;
-                            else
-                                vals[pos + valI++] = uval >> 1;
-                            if (valI == nvals) {
-                                // back up one if we exited the for loop because
-                                // we read all nvals but the end came in the
-                                // middle of a blurb
-                                i--;
-                                break;
-                            }
-                            msbs = 0;
-                            state = 0;
-                        }
-                    }
+            } else {
+                while (pos < end) {
+                    int zeros = Long.numberOfLeadingZeros(c);
+                    int len = zeros + 1 + parameter;
+                    if (len > n) break;
+                    c <<= zeros + 1;
+                    int uval = (zeros << parameter) | (int) (c >>> (64 - parameter));
+                    c <<= parameter;
+                    n -= len;
+                    vals[pos++] = (uval >> 1) ^ -(uval & 1);
                 }
             }
-            getByte = i;
-            getBit = cbits;
-//            totalConsumedBits = (i << BITS_PER_BLURB_LOG2) | cbits;
-//            totalBitsRead += (BITS_PER_BLURB) | cbits;
-            if (valI < nvals) {
-                long endBits = getByte * 8L + getBit;
-//                logger.log(Level.DEBUG, "SE0 " + startBits + " " + endBits);
-                totalBitsRead += (int) (endBits - startBits);
-                availBits -= (int) (endBits - startBits);
-                readFromStream();
-                // these must be zero because we can only get here if we got to
-                // the end of the buffer
-                i = 0;
-                startBits = getByte * 8L + getBit;
+            totalBitsRead += cacheBits - n;
+            cache = c;
+            cacheBits = n;
+            if (pos == from && pos < end) {
+                // the code word does not fit in the cache
+                int msbs = readUnaryUnsigned();
+                int uval = (msbs << parameter) | readRawUInt(parameter);
+                vals[pos++] = (uval >> 1) ^ -(uval & 1);
             }
         }
-
-        long endBits = getByte * 8L + getBit;
-//        logger.log(Level.DEBUG, "SE1 " + startBits + " " + endBits);
-        totalBitsRead += (int) (endBits - startBits);
-        availBits -= (int) (endBits - startBits);
     }
 
     /**
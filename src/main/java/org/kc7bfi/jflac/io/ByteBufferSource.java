@@ -0,0 +1,93 @@
+/*
+ * libFLAC - Free Lossless Audio Codec library Copyright (C) 2000,2001,2002,2003
+ * Josh Coalson
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Library General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Library General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.kc7bfi.jflac.io;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Byte source reading bytes already in memory.
+ * <p>
+ * The bytes are read in place, nothing is copied.
+ *
+ * @author kc7bfi
+ */
+public class ByteBufferSource implements SeekableSource {
+
+    private final ByteBuffer data;
+    /** index in the data of the first byte of the last returned buffer */
+    private int bufferStart = 0;
+    private long position = 0;
+
+    /**
+     * The constructor.
+     *
+     * @param data The bytes from its position to its limit are the source
+     */
+    public ByteBufferSource(ByteBuffer data) {
+        this.data = data.slice();
+    }
+
+    /**
+     * The constructor.
+     *
+     * @param data The bytes of the source
+     */
+    public ByteBufferSource(byte[] data) {
+        this(ByteBuffer.wrap(data));
+    }
+
+    @Override
+    public ByteBuffer refill(ByteBuffer buffer, int keep, int end) throws EOFException {
+        int start = bufferStart + keep;
+        if (bufferStart + end >= data.limit()) throw new EOFException();
+
+        bufferStart = start;
+        position = data.limit();
+        return data.slice(start, data.limit() - start);
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public long getLength() {
+        return data.limit();
+    }
+
+    @Override
+    public void seek(long position) {
+        bufferStart = (int) Math.min(position, data.limit());
+        this.position = bufferStart;
+    }
+
+    @Override
+    public ByteBuffer readAt(long position, int length) {
+        int start = (int) Math.min(position, data.limit());
+        return data.slice(start, Math.min(length, data.limit() - start));
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * libFLAC - Free Lossless Audio Codec library Copyright (C) 2000,2001,2002,2003
+ * Josh Coalson
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Library General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Library General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.kc7bfi.jflac.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Supplies the bytes a {@link BitInputStream} reads from.
+ * <p>
+ * The bit stream reads the bytes of a big endian buffer by index, and asks
+ * the source for a buffer with more bytes when it runs out.
+ *
+ * @author kc7bfi
+ */
+public interface ByteSource extends Closeable {
+
+    /**
+     * Return a buffer holding more bytes.
+     * The bytes of {@code buffer} from {@code keep} up to {@code end} are still
+     * needed and must be at the start of the returned buffer, followed by at
+     * least one new byte. The limit of the returned buffer is the end of the
+     * valid bytes.
+     *
+     * @param buffer The buffer returned by the last call, empty on the first call
+     * @param keep   The index of the first byte still needed
+     * @param end    The index after the last valid byte
+     * @return The buffer to read from
+     * @throws java.io.EOFException at the end of the source
+     * @throws IOException Thrown if error reading the source
+     */
+    ByteBuffer refill(ByteBuffer buffer, int keep, int end) throws IOException;
+
+    /**
+     * Return the position in the source of the byte after the valid bytes of
+     * the last returned buffer.
+     *
+     * @return The source position
+     * @throws IOException Thrown if error reading the source
+     */
+    long getPosition() throws IOException;
+
+    /**
+     * Return the length of the source.
+     *
+     * @return The length in bytes, -1 if not known
+     * @throws IOException Thrown if error reading the source
+     */
+    long getLength() throws IOException;
+
+    /**
+     * Test if {@link #seek(long)} is supported.
+     *
+     * @return True if the source can be positioned
+     */
+    boolean isSeekable();
+
+    /**
+     * Position the source, the next refill starts with the byte at the given
+     * position and keeps nothing of the current buffer.
+     *
+     * @param position The position in the source
+     * @throws IOException Thrown if the source can not be positioned
+     */
+    void seek(long position) throws IOException;
+
+    /**
+     * Return the bytes at a position, without moving the source or touching
+     * the buffer returned by {@link #refill}. Parts of a seekable source are
+     * read this way by the workers of a parallel decode, each at its own
+     * position. The default copies the bytes through {@link #seek(long)} and
+     * {@link #refill}, one read at a time.
+     *
+     * @param position The position in the source
+     * @param length   The number of bytes
+     * @return The bytes from its position to its limit, fewer at the end of the source
+     * @throws IOException Thrown if error reading the source
+     */
+    default ByteBuffer readAt(long position, int length) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(length);
+        synchronized (this) {
+            seek(position);
+            ByteBuffer buffer = ByteBuffer.allocate(0);
+            try {
+                while (data.hasRemaining()) {
+                    buffer = refill(buffer, buffer.limit(), buffer.limit());
+                    data.put(buffer.slice(0, Math.min(buffer.limit(), data.remaining())));
+                }
+            } catch (EOFException e) {
+                // the rest of the source is shorter
+            }
+        }
+        return data.flip();
+    }
+}
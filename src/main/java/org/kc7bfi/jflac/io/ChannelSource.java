@@ -0,0 +1,139 @@
+/*
+ * libFLAC - Free Lossless Audio Codec library Copyright (C) 2000,2001,2002,2003
+ * Josh Coalson
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Library General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Library General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.kc7bfi.jflac.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+/**
+ * Byte source reading a SeekableByteChannel into a buffer.
+ * <p>
+ * File channels, the channel of a {@link RandomAccessFile} and other
+ * seekable channels can be read, the source is positioned through the channel.
+ *
+ * @author kc7bfi
+ */
+public class ChannelSource implements SeekableSource {
+
+    /** the buffer size used if none is given */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    /** room for the bytes kept from the bit cache and some more */
+    private static final int MIN_BUFFER_SIZE = 16;
+
+    private final SeekableByteChannel channel;
+    private final byte[] array;
+    private final ByteBuffer buffer;
+
+    /**
+     * The constructor.
+     *
+     * @param path The file to read
+     * @throws IOException Thrown if error opening the file
+     */
+    public ChannelSource(Path path) throws IOException {
+        this(Files.newByteChannel(path));
+    }
+
+    /**
+     * The constructor.
+     *
+     * @param file The file to read, closed with this source
+     */
+    public ChannelSource(RandomAccessFile file) {
+        this(file.getChannel());
+    }
+
+    /**
+     * The constructor.
+     *
+     * @param channel The channel to read, closed with this source
+     */
+    public ChannelSource(SeekableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * The constructor.
+     *
+     * @param channel    The channel to read, closed with this source
+     * @param bufferSize The size of the buffer in bytes, at least 16
+     */
+    public ChannelSource(SeekableByteChannel channel, int bufferSize) {
+        if (bufferSize < MIN_BUFFER_SIZE) throw new IllegalArgumentException("bufferSize: " + bufferSize);
+        this.channel = channel;
+        this.array = new byte[bufferSize];
+        this.buffer = ByteBuffer.wrap(array);
+    }
+
+    @Override
+    public ByteBuffer refill(ByteBuffer buffer, int keep, int end) throws IOException {
+        // the bytes still needed are at most the few of the bit cache
+        int kept = end - keep;
+        if (kept > 0 && keep > 0) {
+            System.arraycopy(array, keep, array, 0, kept);
+        }
+        this.buffer.clear().position(kept);
+        int bytes;
+        do {
+            bytes = channel.read(this.buffer);
+        } while (bytes == 0);
+        if (bytes < 0) throw new EOFException();
+
+        return this.buffer.flip();
+    }
+
+    @Override
+    public long getPosition() throws IOException {
+        return channel.position();
+    }
+
+    @Override
+    public long getLength() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void seek(long position) throws IOException {
+        channel.position(position);
+    }
+
+    @Override
+    public ByteBuffer readAt(long position, int length) throws IOException {
+        if (!(channel instanceof FileChannel file)) return SeekableSource.super.readAt(position, length);
+        // a positional read leaves the position of the channel alone
+        ByteBuffer data = ByteBuffer.allocate(length);
+        while (data.hasRemaining()) {
+            if (file.read(data, position + data.position()) < 0) break;
+        }
+        return data.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * libFLAC - Free Lossless Audio Codec library Copyright (C) 2000,2001,2002,2003
+ * Josh Coalson
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Library General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Library General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.kc7bfi.jflac.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Byte source reading an InputStream into a buffer.
+ * <p>
+ * The source can be positioned when the stream is a {@link RandomFileInputStream}.
+ * A bigger buffer means fewer reads, it should hold a whole frame for
+ * unbuffered streams like sockets or pipes.
+ *
+ * @author kc7bfi
+ */
+public class InputStreamSource implements ByteSource {
+
+    /** the buffer size used until another one is set */
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+    /** room for the bytes kept from the bit cache and some more */
+    private static final int MIN_BUFFER_SIZE = 16;
+
+    private final InputStream inStream;
+    private byte[] array;
+    private ByteBuffer buffer;
+    /** the size of the buffer from the next refill on */
+    private int bufferSize;
+    /** the number of bytes read from a stream that is not a RandomFileInputStream */
+    private long position = 0;
+
+    /**
+     * The constructor.
+     *
+     * @param is The InputStream to read bytes from
+     */
+    public InputStreamSource(InputStream is) {
+        this(is, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * The constructor.
+     *
+     * @param is         The InputStream to read bytes from
+     * @param bufferSize The size of the buffer in bytes, at least 16
+     */
+    public InputStreamSource(InputStream is, int bufferSize) {
+        if (bufferSize < MIN_BUFFER_SIZE) throw new IllegalArgumentException("bufferSize: " + bufferSize);
+        this.inStream = is;
+        this.array = new byte[bufferSize];
+        this.buffer = ByteBuffer.wrap(array);
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Return the size of the buffer.
+     *
+     * @return The buffer size in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Set the size of the buffer, it is resized at the next refill.
+     *
+     * @param bufferSize The buffer size in bytes, at least 16
+     */
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize < MIN_BUFFER_SIZE) throw new IllegalArgumentException("bufferSize: " + bufferSize);
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Return the input stream.
+     *
+     * @return The input stream
+     */
+    public InputStream getInputStream() {
+        return inStream;
+    }
+
+    @Override
+    public ByteBuffer refill(ByteBuffer buffer, int keep, int end) throws IOException {
+        // first shift the bytes still needed toward the front, the bit stream
+        // refills once its cache holds the last bytes, so these are at most 8
+        int kept = end - keep;
+        byte[] dst = array;
+        if (array.length != bufferSize) {
+            dst = new byte[bufferSize];
+        }
+        if (kept > 0 && (keep > 0 || dst != array)) {
+            System.arraycopy(array, keep, dst, 0, kept);
+        }
+        if (dst != array) {
+            array = dst;
+            this.buffer = ByteBuffer.wrap(dst);
+        }
+
+        // finally, read in some data
+        int bytes = inStream.read(array, kept, array.length - kept);
+        if (bytes <= 0) throw new EOFException();
+
+        position += bytes;
+        this.buffer.limit(kept + bytes);
+        return this.buffer;
+    }
+
+    @Override
+    public long getPosition() throws IOException {
+        if (inStream instanceof RandomFileInputStream rf) return rf.getPosition();
+        return position;
+    }
+
+    @Override
+    public long getLength() throws IOException {
+        if (inStream instanceof RandomFileInputStream rf) return rf.getLength();
+        return -1;
+    }
+
+    @Override
+    public boolean isSeekable() {
+        return inStream instanceof RandomFileInputStream;
+    }
+
+    @Override
+    public void seek(long position) throws IOException {
+        if (!(inStream instanceof RandomFileInputStream rf))
+            throw new IOException("Not a RandomFileInputStream: " + inStream.getClass().getName());
+        rf.seek(position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inStream.close();
+    }
+}
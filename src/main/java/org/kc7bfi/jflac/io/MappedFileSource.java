@@ -0,0 +1,115 @@
+/*
+ * libFLAC - Free Lossless Audio Codec library Copyright (C) 2000,2001,2002,2003
+ * Josh Coalson
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Library General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Library General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.kc7bfi.jflac.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Byte source reading a memory mapped file.
+ * <p>
+ * The bytes are read straight from the mapping, nothing is copied. Files
+ * larger than a mapping window are mapped one window at a time.
+ *
+ * @author kc7bfi
+ */
+public class MappedFileSource implements SeekableSource {
+
+    /** the largest part of the file mapped at once */
+    private static final int MAX_WINDOW_SIZE = 1 << 30;
+
+    private final FileChannel channel;
+    private final long length;
+    private MappedByteBuffer window;
+    /** file position of the first byte of the window */
+    private long windowStart = 0;
+    /** file position of the first byte of the last returned buffer */
+    private long bufferStart = 0;
+    private long position = 0;
+
+    /**
+     * The constructor.
+     *
+     * @param path The file to read
+     * @throws IOException Thrown if error opening the file
+     */
+    public MappedFileSource(Path path) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * The constructor.
+     *
+     * @param channel The file channel to read, closed with this source
+     * @throws IOException Thrown if error reading the file size
+     */
+    public MappedFileSource(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.length = channel.size();
+    }
+
+    @Override
+    public ByteBuffer refill(ByteBuffer buffer, int keep, int end) throws IOException {
+        long start = bufferStart + keep;
+        long valid = bufferStart + end;
+        if (valid >= length) throw new EOFException();
+
+        if (window == null || start < windowStart || windowStart + window.capacity() <= valid) {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAX_WINDOW_SIZE, length - start));
+            windowStart = start;
+        }
+        int offset = (int) (start - windowStart);
+        bufferStart = start;
+        position = windowStart + window.capacity();
+        return window.slice(offset, window.capacity() - offset);
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public void seek(long position) {
+        bufferStart = position;
+        this.position = position;
+    }
+
+    @Override
+    public ByteBuffer readAt(long position, int length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.max(0, Math.min(length, this.length - position)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
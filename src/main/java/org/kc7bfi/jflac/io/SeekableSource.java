@@ -0,0 +1,51 @@
+/*
+ * libFLAC - Free Lossless Audio Codec library Copyright (C) 2000,2001,2002,2003
+ * Josh Coalson
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Library General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Library General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.kc7bfi.jflac.io;
+
+import java.io.IOException;
+
+
+/**
+ * Byte source that can always be positioned.
+ * <p>
+ * A decoder on a seekable source seeks forward and backward without
+ * reopening it, see {@link org.kc7bfi.jflac.FLACDecoder#seekToFrame(long)}.
+ *
+ * @author kc7bfi
+ * @see ChannelSource
+ * @see MappedFileSource
+ * @see ByteBufferSource
+ */
+public interface SeekableSource extends ByteSource {
+
+    /**
+     * Return the length of the source.
+     *
+     * @return The length in bytes
+     * @throws IOException Thrown if error reading the source
+     */
+    @Override
+    long getLength() throws IOException;
+
+    @Override
+    default boolean isSeekable() {
+        return true;
+    }
+}
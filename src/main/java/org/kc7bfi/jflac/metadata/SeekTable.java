@@ -21,6 +21,7 @@
 package org.kc7bfi.jflac.metadata;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.kc7bfi.jflac.io.BitInputStream;
 import org.kc7bfi.jflac.io.BitOutputStream;
@@ -28,14 +29,25 @@ import org.kc7bfi.jflac.io.BitOutputStream;
 
 /**
  * SeekTable Metadata block.
+ * <p>
+ * The seek points are kept in primitive arrays and searched by binary search.
  *
  * @author kc7bfi
  */
 public class SeekTable extends Metadata {
 
     private static final int SEEKPOINT_LENGTH_BYTES = 18;
-
-    protected final SeekPoint[] points;
+    /** the sample number of a placeholder point */
+    private static final long PLACEHOLDER = 0xffff_ffff_ffff_ffffL;
+
+    /** the sample number of each seek point */
+    protected final long[] sampleNumbers;
+    /** the offset of each seek point from the first frame */
+    protected final long[] streamOffsets;
+    /** the number of samples of the frame of each seek point */
+    protected final int[] frameSamples;
+    /** the number of seek points before the placeholders, the ones searched */
+    protected final int searchable;
 
     /**
      * The constructor.
@@ -49,11 +61,17 @@ public class SeekTable extends Metadata {
         super(isLast, length);
         int numPoints = length / SEEKPOINT_LENGTH_BYTES;
 
-        points = new SeekPoint[numPoints];
-        for (int i = 0; i < points.length; i++) {
-            points[i] = new SeekPoint(is);
+        sampleNumbers = new long[numPoints];
+        streamOffsets = new long[numPoints];
+        frameSamples = new int[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            SeekPoint point = new SeekPoint(is);
+            sampleNumbers[i] = point.sampleNumber;
+            streamOffsets[i] = point.streamOffset;
+            frameSamples[i] = point.frameSamples;
         }
-        length -= (length * SEEKPOINT_LENGTH_BYTES);
+        searchable = countSearchable();
+        length -= (numPoints * SEEKPOINT_LENGTH_BYTES);
 
         // if there is a partial point left, skip over it
         if (length > 0) is.readByteBlockAlignedNoCRC(null, length);
@@ -67,7 +85,22 @@ public class SeekTable extends Metadata {
      */
     public SeekTable(SeekPoint[] points, boolean isLast) {
         super(isLast, -1);
-        this.points = points;
+        sampleNumbers = new long[points.length];
+        streamOffsets = new long[points.length];
+        frameSamples = new int[points.length];
+        for (int i = 0; i < points.length; i++) {
+            sampleNumbers[i] = points[i].sampleNumber;
+            streamOffsets[i] = points[i].streamOffset;
+            frameSamples[i] = points[i].frameSamples;
+        }
+        searchable = countSearchable();
+    }
+
+    /** the points are sorted by sample number, the placeholders last */
+    private int countSearchable() {
+        int count = 0;
+        while (count < sampleNumbers.length && sampleNumbers[count] != PLACEHOLDER) count++;
+        return count;
     }
 
     /**
@@ -83,8 +116,8 @@ public class SeekTable extends Metadata {
         os.writeRawUInt(METADATA_TYPE_SEEKTABLE, STREAM_METADATA_TYPE_LEN);
         os.writeRawUInt(calcLength(), STREAM_METADATA_LENGTH_LEN);
 
-        for (SeekPoint point : points) {
-            point.write(os);
+        for (int i = 0; i < sampleNumbers.length; i++) {
+            new SeekPoint(sampleNumbers[i], streamOffsets[i], frameSamples[i]).write(os);
         }
 
         os.flushByteAligned();
@@ -96,7 +129,7 @@ public class SeekTable extends Metadata {
      * @return The metadata block size
      */
     public int calcLength() {
-        return points.length * SEEKPOINT_LENGTH_BYTES;
+        return sampleNumbers.length * SEEKPOINT_LENGTH_BYTES;
     }
 
     /**
@@ -106,19 +139,65 @@ public class SeekTable extends Metadata {
      * @return The selected seek point
      */
     public SeekPoint getSeekPoint(int idx) {
-        if (idx < 0 || idx >= points.length) return null;
-        return points[idx];
+        if (idx < 0 || idx >= sampleNumbers.length) return null;
+        return new SeekPoint(sampleNumbers[idx], streamOffsets[idx], frameSamples[idx]);
     }
 
+    /**
+     * Return the seek point before the first one after a sample.
+     *
+     * @param sampleNumber The sample number
+     * @return The last seek point not after the sample, the first seek point if all are after it,
+     *         null if none is after it
+     */
     public SeekPoint seekSeekPoint(long sampleNumber) {
-        for (int idx = 0; idx < points.length; idx++) {
-            if (points[idx].sampleNumber > sampleNumber) {
-                if (idx > 0)
-                    return points[idx - 1];
-                return points[idx];
-            }
-        }
-        return null;
+        int idx = findSeekPoint(sampleNumber) + 1;
+        if (idx >= searchable) return null;
+        return getSeekPoint(idx > 0 ? idx - 1 : 0);
+    }
+
+    /**
+     * Find the last seek point not after a sample, placeholder points are not searched.
+     *
+     * @param sampleNumber The sample number
+     * @return The seek point number, -1 if all seek points are after the sample
+     */
+    public int findSeekPoint(long sampleNumber) {
+        int idx = Arrays.binarySearch(sampleNumbers, 0, searchable, sampleNumber);
+        if (idx < 0) return -idx - 2;
+        // a point may be repeated, the last one is taken
+        while (idx + 1 < searchable && sampleNumbers[idx + 1] == sampleNumber) idx++;
+        return idx;
+    }
+
+    /**
+     * Return the sample number of a seek point.
+     *
+     * @param idx The seek point number
+     * @return The sample number of the target frame
+     */
+    public long getSampleNumber(int idx) {
+        return sampleNumbers[idx];
+    }
+
+    /**
+     * Return the stream offset of a seek point.
+     *
+     * @param idx The seek point number
+     * @return The offset of the target frame from the first frame
+     */
+    public long getStreamOffset(int idx) {
+        return streamOffsets[idx];
+    }
+
+    /**
+     * Return the frame samples of a seek point.
+     *
+     * @param idx The seek point number
+     * @return The number of samples of the target frame
+     */
+    public int getFrameSamples(int idx) {
+        return frameSamples[idx];
     }
 
     /**
@@ -127,15 +206,15 @@ public class SeekTable extends Metadata {
      * @return the number of seek points
      */
     public int numberOfPoints() {
-        return points.length;
+        return sampleNumbers.length;
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        sb.append("SeekTable: points=").append(points.length).append("\n");
-        for (SeekPoint point : points) {
-            sb.append("\tPoint ").append(point.toString()).append("\n");
+        sb.append("SeekTable: points=").append(sampleNumbers.length).append("\n");
+        for (int i = 0; i < sampleNumbers.length; i++) {
+            sb.append("\tPoint ").append(getSeekPoint(i)).append("\n");
         }
 
         return sb.toString();
@@ -22,29 +22,78 @@ package org.kc7bfi.jflac.sound.spi;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
 import javax.sound.sampled.AudioFormat;
 
 import org.kc7bfi.jflac.FLACDecoder;
-import org.kc7bfi.jflac.PCMProcessor;
 import org.kc7bfi.jflac.frame.Frame;
+import org.kc7bfi.jflac.io.RandomFileInputStream;
 import org.kc7bfi.jflac.metadata.Metadata;
+import org.kc7bfi.jflac.metadata.SeekPoint;
 import org.kc7bfi.jflac.metadata.StreamInfo;
 import org.kc7bfi.jflac.util.ByteData;
 
 
 /**
  * Converts a Flac bitstream into a PCM 16bits/sample audio stream.
+ * <p>
+ * The PCM is signed little endian of the bits per sample of the stream, or
+ * any format {@link FlacFormatConversionProvider} lists: signed of 8, 16, 24
+ * or 32 bits, 32 bit float, and big endian, packed from the samples of the
+ * decoder in one pass. Reducing the bits per sample truncates, or adds TPDF
+ * dither with {@link #setDither(boolean)}, the system property
+ * {@value #DITHER_PROPERTY} sets the default.
+ * <p>
+ * {@link #skip(long)} seeks the decoder when the stream is a
+ * {@link RandomFileInputStream}, like the ones of
+ * {@link FlacAudioFileReader#getAudioInputStream(java.io.File)}.
+ * Such a stream supports {@link #mark(int)} and {@link #reset()} too, the
+ * mark is a frame position, the PCM read after it is not kept.
+ * <p>
+ * Frames are decoded on the thread reading, or, with
+ * {@link #setDecodeAhead(int)}, on a thread of their own keeping the buffer
+ * filled with some milliseconds of audio, reading only copies bytes then.
+ * The system property {@value #DECODE_AHEAD_PROPERTY} sets the default
+ * milliseconds.
+ * <p>
+ * The buffer is sized once, from the largest frame of the StreamInfo and the
+ * milliseconds decoded ahead, to at most {@link #setMaxBufferSize(int)}
+ * bytes. The PCM of a frame not fitting in the buffer waits beside it and
+ * is put as the buffer is read, so the memory taken is the buffer and the
+ * PCM of one largest frame.
  *
  * @author Marc Gimpel, Wimba S.A. (marc@wimba.com)
  * @author Florian Bomers
  * @version $Revision: 1.6 $
  */
-public class Flac2PcmAudioInputStream extends RingedAudioInputStream implements PCMProcessor {
+public class Flac2PcmAudioInputStream extends RingedAudioInputStream {
+
+    /** the system property of the default milliseconds decoded ahead, 0 for none */
+    public static final String DECODE_AHEAD_PROPERTY = "org.kc7bfi.jflac.decodeAhead";
+
+    /** the system property of the default dither, true to dither */
+    public static final String DITHER_PROPERTY = "org.kc7bfi.jflac.dither";
+
+    private static final ThreadFactory DEFAULT_THREAD_FACTORY = r -> {
+        Thread thread = new Thread(r, "Flac2PcmAudioInputStream decode-ahead");
+        thread.setDaemon(true);
+        return thread;
+    };
 
     /** Flac Decoder. */
     private FLACDecoder decoder;
 
     private ByteData pcmData;
+    /** the bytes of the PCM data from here are not in the buffer yet */
+    private int pcmOffset;
+
+    /** the most bytes of the buffer */
+    private int maxBufferSize = Integer.MAX_VALUE;
+
+    /** packs the samples to the format, null when the decoder packs them */
+    private PcmConverter converter;
+    private boolean dither = Boolean.getBoolean(DITHER_PROPERTY);
 
     /** StreamInfo MetaData. */
     private StreamInfo streamInfo;
@@ -52,15 +101,38 @@ public class Flac2PcmAudioInputStream extends RingedAudioInputStream implements
     /** the meta data from the stream */
     private Metadata[] metaData;
 
+    /** the sample number of the first sample not decoded yet */
+    private long nextSample;
+    /** the first sample and the source position of the frame in the buffer */
+    private long frameSample;
+    private long framePosition = -1;
+
+    /** the sample number of the mark, -1 if not marked */
+    private long markSample = -1;
+    /** the frame holding the mark, -1 if not known */
+    private long markFrameSample;
+    private long markFramePosition = -1;
+
+    /** the milliseconds decoded ahead, 0 to decode on the thread reading */
+    private int decodeAhead = Integer.getInteger(DECODE_AHEAD_PROPERTY, 0);
+    private ThreadFactory threadFactory = DEFAULT_THREAD_FACTORY;
+    /** the thread decoding ahead, null if not running */
+    private Thread decodeThread;
+    private volatile boolean decodeStopped;
+    /** the error of the thread decoding ahead, thrown by the next fill */
+    private volatile IOException decodeError;
+
     /**
-     * Constructor.
+     * Constructor. The buffer is sized on the first read, see
+     * {@link #setMaxBufferSize(int)}.
      *
      * @param in     the underlying input stream.
      * @param format the target format of this stream's audio data.
      * @param length the length in sample frames of the data in this stream.
      */
     public Flac2PcmAudioInputStream(InputStream in, AudioFormat format, long length) {
-        this(in, format, length, DEFAULT_BUFFER_SIZE);
+        // the least buffer until it is sized
+        this(in, format, length, format.getFrameSize() * 2);
     }
 
     /**
@@ -83,50 +155,395 @@ public class Flac2PcmAudioInputStream extends RingedAudioInputStream implements
         if (decoder == null) {
             initDecoder();
         }
+        if (decodeAhead > 0) {
+            fillAhead();
+            return;
+        }
+        if (pending() > 0) {
+            flush();
+            return;
+        }
+        if (buffer.isEOF()) {
+            return;
+        }
         if (decoder.isEOF()) {
             buffer.setEOF(true);
         } else {
             Frame frame = decoder.readNextFrame();
             if (frame != null) {
-                pcmData = decoder.decodeFrame(frame, pcmData);
-                processPCM(pcmData);
+                put(frame, 0);
             }
         }
     }
 
     /**
-     * Initialize the Flac Decoder after reading the Header.
+     * Decode a frame into the buffer.
      *
-     * @throws IOException
+     * @param frame the frame read last
+     * @param skip  the samples at the start of the frame to leave out
      */
-    protected void initDecoder() throws IOException {
-        decoder = new FLACDecoder(in);
-        decoder.addPCMProcessor(this);
-        metaData = decoder.readMetadata();
+    private void put(Frame frame, int skip) {
+        if (converter != null) {
+            int size = frame.header.blockSize * getFormat().getFrameSize();
+            if (pcmData == null || pcmData.getData().length < size) {
+                pcmData = new ByteData(size);
+            }
+            pcmData.setLen(converter.convert(decoder.getSamples(), frame.header.blockSize, pcmData.getData(), 0));
+        } else {
+            pcmData = decoder.decodeFrame(frame, pcmData);
+        }
+        pcmOffset = skip * getFormat().getFrameSize();
+        nextSample = frame.header.sampleNumber + frame.header.blockSize;
+        frameSample = frame.header.sampleNumber;
+        framePosition = decoder.getFramePosition();
+        flush();
+    }
+
+    /** puts as much of the PCM data not in the buffer as fits, without waiting */
+    private void flush() {
+        int len = Math.min(pending(), buffer.putAvailable());
+        buffer.put(pcmData.getData(), pcmOffset, len);
+        pcmOffset += len;
+    }
+
+    /** the bytes of the PCM data not in the buffer yet */
+    private int pending() {
+        return pcmData != null ? pcmData.getLen() - pcmOffset : 0;
+    }
+
+    /** the samples decoded not read yet, only while not decoding ahead */
+    private int buffered() {
+        return (buffer.getAvailable() + pending()) / getFormat().getFrameSize();
+    }
+
+    /**
+     * Add TPDF dither when the format has fewer bits per sample than the
+     * stream, from the first read.
+     *
+     * @param dither true to dither, false to truncate
+     */
+    public void setDither(boolean dither) {
+        this.dither = dither;
+    }
+
+    /**
+     * @return true if reducing the bits per sample dithers
+     */
+    public boolean isDither() {
+        return dither;
+    }
+
+    /**
+     * Limit the memory of the buffer, from the next time it is sized, the
+     * first read or the start of decoding ahead. The buffer is never shrunk,
+     * so the limit is not less than the buffer allocated, two sample frames
+     * rounded up to a power of two before the first read. The PCM of the
+     * frame waiting beside the buffer, at most one largest frame, is not
+     * counted.
+     *
+     * @param bytes the most bytes of the buffer, at least the buffer allocated
+     */
+    public synchronized void setMaxBufferSize(int bytes) {
+        if (bytes < buffer.size()) throw new IllegalArgumentException("bytes: " + bytes);
+        this.maxBufferSize = bytes;
+    }
+
+    /**
+     * @return the most bytes of the buffer
+     */
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    /**
+     * Sizes the buffer for the largest frame and the milliseconds decoded
+     * ahead, within the most bytes of the buffer. The buffer is a power of
+     * two, rounded down, the PCM of a frame not fitting waits beside it.
+     * The most bytes are two sample frames at least, so more than one sample
+     * frame fits.
+     */
+    private void sizeBuffer() {
+        int frameSize = getFormat().getFrameSize();
+        long frameBytes = streamInfo != null ? (long) streamInfo.getMaxBlockSize() * frameSize : DEFAULT_BUFFER_SIZE;
+        long aheadBytes = (long) (getFormat().getFrameRate() * decodeAhead / 1000) * frameSize;
+        int size = (int) Math.min(Math.max(frameBytes, aheadBytes), Math.min(maxBufferSize, 1 << 30));
+        buffer.resize(Integer.highestOneBit(size));
+    }
+
+    /**
+     * Decode frames on a thread of their own from now on, keeping the buffer
+     * filled with the given milliseconds of audio.
+     *
+     * @param millis the milliseconds of audio decoded ahead, 0 to decode on the thread reading
+     */
+    public void setDecodeAhead(int millis) {
+        setDecodeAhead(millis, DEFAULT_THREAD_FACTORY);
+    }
+
+    /**
+     * Decode frames on a thread of their own from now on, keeping the buffer
+     * filled with the given milliseconds of audio.
+     *
+     * @param millis        the milliseconds of audio decoded ahead, 0 to decode on the thread reading
+     * @param threadFactory makes the thread decoding, a daemon thread by default
+     */
+    public synchronized void setDecodeAhead(int millis, ThreadFactory threadFactory) {
+        if (millis < 0) throw new IllegalArgumentException("millis: " + millis);
+        stopDecodeAhead();
+        this.decodeAhead = millis;
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * @return the milliseconds of audio decoded ahead, 0 if decoded on the thread reading
+     */
+    public int getDecodeAhead() {
+        return decodeAhead;
+    }
+
+    /**
+     * With decode ahead, the thread decoding is started if not running and
+     * the bytes decoded so far are returned, without waiting for more.
+     */
+    @Override
+    public synchronized int available() throws IOException {
+        if (decodeAhead <= 0) {
+            return super.available();
+        }
+        checkIfStillOpen();
+        if (buffer.getAvailable() < getFormat().getFrameSize()) {
+            if (decoder == null) {
+                initDecoder();
+            }
+            startDecodeAhead();
+            throwDecodeError();
+        }
+        return buffer.getAvailable();
+    }
+
+    /** waits for a whole sample frame or EOF, starting the thread decoding ahead if not running */
+    private void fillAhead() throws IOException {
+        startDecodeAhead();
+        while (!buffer.waitGetAvailable(getFormat().getFrameSize())) {
+            // woken up early
+        }
+        throwDecodeError();
+    }
+
+    /** starts the thread decoding ahead if not running */
+    private void startDecodeAhead() {
+        if (decodeThread == null && !buffer.isEOF()) {
+            sizeBuffer();
+            decodeStopped = false;
+            decodeThread = threadFactory.newThread(this::decodeAhead);
+            decodeThread.start();
+        }
+    }
+
+    /** throws the error of the thread decoding ahead once */
+    private void throwDecodeError() throws IOException {
+        IOException e = decodeError;
+        if (e != null) {
+            decodeError = null;
+            throw e;
+        }
     }
 
     /**
-     * Process the StreamInfo block.
+     * Run by the thread decoding ahead, a frame is decoded when all of the
+     * last one is in the buffer, its PCM is put as the buffer is read. Putting
+     * never waits, the thread waits for room for a quarter of the buffer.
+     */
+    private void decodeAhead() {
+        try {
+            while (!decodeStopped) {
+                int pending = pending();
+                if (pending > 0) {
+                    if (buffer.waitPutAvailable(Math.min(pending, buffer.size() / 4))) {
+                        flush();
+                    }
+                    continue;
+                }
+                if (decoder.isEOF()) {
+                    buffer.setEOF(true);
+                    break;
+                }
+                Frame frame = decoder.readNextFrame();
+                if (frame != null) {
+                    put(frame, 0);
+                }
+            }
+        } catch (IOException e) {
+            decodeError = e;
+            buffer.setEOF(true);
+        } catch (RuntimeException e) {
+            decodeError = new IOException(e);
+            buffer.setEOF(true);
+        }
+    }
+
+    /** stops the thread decoding ahead if running, the bytes decoded stay in the buffer */
+    private void stopDecodeAhead() {
+        Thread thread = decodeThread;
+        if (thread == null) return;
+        decodeStopped = true;
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        decodeThread = null;
+    }
+
+    /**
+     * Tests if the stream can be positioned, see {@link #mark(int)}.
+     *
+     * @return true if the FLAC stream is a {@link RandomFileInputStream}
+     */
+    @Override
+    public boolean markSupported() {
+        return getSource() instanceof RandomFileInputStream;
+    }
+
+    /**
+     * Mark the position, as the frame holding the next sample to be read
+     * and the samples before it in that frame. The PCM read after the mark is
+     * not kept, so the mark stays valid whatever is read.
      *
-     * @param streamInfo the StreamInfo block
-     * @see org.kc7bfi.jflac.PCMProcessor#processStreamInfo(org.kc7bfi.jflac.metadata.StreamInfo)
+     * @param readlimit ignored.
      */
     @Override
-    public void processStreamInfo(StreamInfo streamInfo) {
-        this.streamInfo = streamInfo;
+    public synchronized void mark(int readlimit) {
+        stopDecodeAhead();
+        markSample = nextSample - buffered();
+        if (framePosition >= 0 && markSample >= frameSample) {
+            markFrameSample = frameSample;
+            markFramePosition = framePosition;
+        } else {
+            // nothing read yet, or in a frame decoded ahead before the last one
+            markFramePosition = -1;
+        }
     }
 
     /**
-     * Process the decoded PCM bytes. This is called synchronously from the
-     * fill() method.
+     * Go back to the mark by seeking the decoder to the frame of the mark,
+     * only the samples after the mark in that frame are decoded.
      *
-     * @param pcm The decoded PCM data
-     * @see org.kc7bfi.jflac.PCMProcessor#processPCM(ByteData)
+     * @throws IOException if the stream has not been marked or can not be positioned.
      */
     @Override
-    public void processPCM(ByteData pcm) {
-        buffer.resize(pcm.getLen() * 2);
-        buffer.put(pcm.getData(), 0, pcm.getLen());
+    public synchronized void reset() throws IOException {
+        if (in == null) throw new IOException("Stream closed");
+        if (!markSupported()) throw new IOException("reset not supported");
+        if (markSample < 0) throw new IOException("mark not set");
+        if (decoder == null) return;
+        stopDecodeAhead();
+        decodeError = null;
+        Frame frame;
+        if (markFramePosition >= 0) {
+            frame = decoder.readFrameAt(new SeekPoint(markFrameSample, markFramePosition, 0));
+        } else {
+            frame = decoder.seekToFrame(markSample);
+        }
+        buffer.empty();
+        buffer.setEOF(false);
+        pcmOffset = pcmData != null ? pcmData.getLen() : 0;
+        if (frame == null) throw new IOException("mark frame not found");
+        put(frame, (int) (markSample - frame.header.sampleNumber));
+    }
+
+    /** the FLAC stream the decoder reads */
+    private InputStream getSource() {
+        return in instanceof FlacAudioInputStream flac ? flac.getSource() : in;
+    }
+
+    /**
+     * Skip whole sample frames.
+     * The bytes decoded already are dropped, the rest is skipped by seeking
+     * the decoder to the frame holding the first sample not skipped, only the
+     * samples after it in that frame are decoded. When the stream can not be
+     * positioned, the frames skipped are read, but not converted to PCM.
+     *
+     * @param n the number of bytes to be skipped.
+     * @return the actual number of bytes skipped.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public synchronized long skip(long n) throws IOException {
+        if (in == null) throw new IOException("Stream closed");
+        if (decoder == null) {
+            initDecoder();
+        }
+        int frameSize = getFormat().getFrameSize();
+        long samples = n / frameSize;
+        if (samples <= buffer.getAvailable() / frameSize) {
+            return (long) buffer.skip((int) samples * frameSize);
+        }
+        stopDecodeAhead();
+        decodeError = null;
+        int buffered = buffered();
+        if (samples <= buffered) {
+            // a sample frame may be split between the buffer and the pcm data
+            pcmOffset += (int) samples * frameSize - buffer.skip(buffer.getAvailable());
+            flush();
+            return samples * frameSize;
+        }
+        long target = nextSample - buffered + samples;
+        long totalSamples = streamInfo != null ? streamInfo.getTotalSamples() : 0;
+        if (totalSamples > 0 && target >= totalSamples) {
+            target = totalSamples;
+        }
+        buffer.empty();
+        pcmOffset = pcmData != null ? pcmData.getLen() : 0;
+        long from = nextSample - buffered;
+        Frame frame = target < totalSamples || totalSamples == 0 ? decoder.seekToFrame(target) : null;
+        if (frame != null) {
+            put(frame, (int) (target - frame.header.sampleNumber));
+        } else {
+            // past the end
+            nextSample = totalSamples > 0 ? totalSamples : decoder.getSamplesDecoded();
+            target = nextSample;
+            buffer.setEOF(true);
+        }
+        return (target - from) * frameSize;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        stopDecodeAhead();
+        super.close();
+    }
+
+    /**
+     * Initialize the Flac Decoder after reading the Header.
+     *
+     * @throws IOException
+     */
+    protected void initDecoder() throws IOException {
+        if (in instanceof FlacAudioInputStream flac && flac.getDecoder() != null) {
+            // the audio file reader has read the metadata
+            decoder = flac.takeDecoder();
+            metaData = flac.getMetadata();
+        } else {
+            // a RandomFileInputStream kept by the audio file reader can be positioned
+            decoder = new FLACDecoder(getSource());
+            metaData = decoder.readMetadata();
+        }
+        streamInfo = decoder.getStreamInfo();
+        AudioFormat format = getFormat();
+        // the decoder packs 8 bits as offset binary, like wav, the converter packs them signed
+        if (streamInfo != null && (!format.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED)
+                || format.isBigEndian() || format.getSampleSizeInBits() != streamInfo.getBitsPerSample()
+                || streamInfo.getBitsPerSample() == 8)) {
+            converter = new PcmConverter(streamInfo.getBitsPerSample(), format, dither);
+        }
+        sizeBuffer();
     }
 
     /**
@@ -21,16 +21,17 @@
 package org.kc7bfi.jflac.sound.spi;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.SequenceInputStream;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.net.URL;
 import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -38,10 +39,12 @@ import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.sound.sampled.spi.AudioFileReader;
 
-import org.kc7bfi.jflac.Constants;
 import org.kc7bfi.jflac.FLACDecoder;
 import org.kc7bfi.jflac.io.BitInputStream;
-import org.kc7bfi.jflac.io.BitOutputStream;
+import org.kc7bfi.jflac.io.ByteBufferSource;
+import org.kc7bfi.jflac.io.InputStreamSource;
+import org.kc7bfi.jflac.io.RandomFileInputStream;
+import org.kc7bfi.jflac.metadata.Metadata;
 import org.kc7bfi.jflac.metadata.StreamInfo;
 
 import static java.lang.System.getLogger;
@@ -51,6 +54,14 @@ import static java.lang.System.getLogger;
  * Provider for Flac audio file reading services. This implementation can parse
  * the format information from Flac audio file, and can produce audio input
  * streams from files of this type.
+ * <p>
+ * The audio input streams hold the decoder having read the metadata, the
+ * conversion to PCM goes on decoding from the first frame.
+ * <p>
+ * The frame length is the total samples of the StreamInfo, if given there.
+ * The audio file format has the standard "duration" property then, and the
+ * "bitrate" property, as its audio format, when the length of the file is
+ * known.
  *
  * @author Marc Gimpel, Wimba S.A. (marc@wimba.com)
  * @version $Revision: 1.8 $
@@ -59,8 +70,8 @@ public class FlacAudioFileReader extends AudioFileReader {
 
     private static final Logger logger = getLogger(FlacAudioFileReader.class.getName());
 
-    private FLACDecoder decoder;
-    private StreamInfo streamInfo;
+    /** the bytes of a stream read before it is reset, if it is not FLAC */
+    private static final int MARK_LIMIT = 1000;
 
     /**
      * Obtains the audio file format of the File provided. The File must point
@@ -75,7 +86,7 @@ public class FlacAudioFileReader extends AudioFileReader {
     @Override
     public AudioFileFormat getAudioFileFormat(File file) throws UnsupportedAudioFileException, IOException {
         try (InputStream inputStream = Files.newInputStream(file.toPath())) {
-            return getAudioFileFormat(new BufferedInputStream(inputStream), (int) file.length());
+            return getAudioFileFormat(new BufferedInputStream(inputStream), file.length() <= Integer.MAX_VALUE ? (int) file.length() : AudioSystem.NOT_SPECIFIED);
         }
     }
 
@@ -116,7 +127,7 @@ public class FlacAudioFileReader extends AudioFileReader {
      * Return the AudioFileFormat from the given InputStream. Implementation.
      *
      * @param bitStream input to decode
-     * @param mediaLength unused
+     * @param mediaLength the bytes of the stream, or AudioSystem.NOT_SPECIFIED
      * @return an AudioInputStream object based on the audio file data contained
      * in the input stream.
      * @throws UnsupportedAudioFileException if the File does not point to a valid audio file data
@@ -128,19 +139,64 @@ logger.log(Level.DEBUG, "enter available: " + bitStream.available());
         if (!bitStream.markSupported()) {
             throw new IllegalArgumentException("must be mark supported");
         }
-        AudioFormat format;
+        AudioFileFormat format;
         try {
-            bitStream.mark(1000);
-            decoder = new FLACDecoder(bitStream);
-            streamInfo = decoder.readStreamInfo();
-            if (streamInfo == null) {
-logger.log(Level.DEBUG, "FLAC file reader: no stream info found");
-                throw new UnsupportedAudioFileException("No StreamInfo found");
+            bitStream.mark(MARK_LIMIT);
+            format = toAudioFileFormat((StreamInfo) readHeader(new FLACDecoder(bitStream), false)[0], mediaLength);
+        } finally {
+            try {
+                bitStream.reset();
+            } catch (IOException e) {
+                logger.log(Level.INFO, e.getMessage());
+            }
+            logger.log(Level.DEBUG, "finally available: " + bitStream.available());
+        }
+logger.log(Level.DEBUG, "FLAC file reader: got stream with format " + format);
+        return format;
+    }
+
+    /**
+     * The audio file format of a StreamInfo.
+     *
+     * @param streamInfo  the StreamInfo of the file
+     * @param mediaLength the bytes of the file, or AudioSystem.NOT_SPECIFIED
+     * @return the format, with the frame length and the duration if the total samples are known
+     */
+    private static AudioFileFormat toAudioFileFormat(StreamInfo streamInfo, long mediaLength) {
+        long frames = streamInfo.getTotalSamples();
+        int bitrate = AudioSystem.NOT_SPECIFIED;
+        Map<String, Object> properties = new HashMap<>();
+        if (frames > 0 && streamInfo.getSampleRate() > 0) {
+            properties.put("duration", frames * 1_000_000 / streamInfo.getSampleRate());
+            if (mediaLength > 0) {
+                bitrate = (int) Math.min(mediaLength * 8 * streamInfo.getSampleRate() / frames, Integer.MAX_VALUE);
+                properties.put(FlacAudioFormat.KEY_BITRATE, bitrate);
             }
+        }
+        return new AudioFileFormat(FlacFileFormatType.FLAC, new FlacAudioFormat(streamInfo, bitrate),
+                frames > 0 && frames <= Integer.MAX_VALUE ? (int) frames : AudioSystem.NOT_SPECIFIED, properties);
+    }
 
-            format = new FlacAudioFormat(streamInfo);
+    /**
+     * Reads the StreamInfo, and the other metadata if asked, the decoder goes
+     * on with the next metadata block, or the first frame.
+     *
+     * @param decoder the decoder at the start of the stream
+     * @param all     reads all of the metadata
+     * @return the metadata read, the StreamInfo first
+     * @throws UnsupportedAudioFileException if the stream is not FLAC
+     * @throws IOException                   if an I/O exception occurs.
+     */
+    private static Metadata[] readHeader(FLACDecoder decoder, boolean all) throws UnsupportedAudioFileException, IOException {
+        try {
+            StreamInfo streamInfo = decoder.readStreamInfo();
+            Metadata[] others = all ? decoder.readMetadata(streamInfo) : new Metadata[0];
+            Metadata[] metadata = new Metadata[1 + others.length];
+            metadata[0] = streamInfo;
+            System.arraycopy(others, 0, metadata, 1, others.length);
+            return metadata;
         } catch (IOException ioe) {
-            if (ioe.getMessage().equals("Could not find Stream Sync")) {
+            if ("Could not find Stream Sync".equals(ioe.getMessage())) {
 logger.log(Level.DEBUG, "FLAC file reader: not a FLAC stream");
 logger.log(Level.TRACE, ioe.getMessage(), ioe);
                 throw (UnsupportedAudioFileException) new UnsupportedAudioFileException(ioe.getMessage()).initCause(ioe);
@@ -151,22 +207,29 @@ logger.log(Level.TRACE, ioe.getMessage(), ioe);
 logger.log(Level.DEBUG, e.toString());
 logger.log(Level.TRACE, e.toString(), e);
             throw (UnsupportedAudioFileException) new UnsupportedAudioFileException(e.getMessage()).initCause(e);
-        } finally {
-            try {
-                bitStream.reset();
-            } catch (IOException e) {
-                logger.log(Level.INFO, e.getMessage());
-            }
-            logger.log(Level.DEBUG, "finally available: " + bitStream.available());
         }
+    }
+
+    /** the audio stream of a decoder having read the metadata, its underlying stream is the one of the decoder */
+    private static AudioInputStream toAudioInputStream(InputStream source, FLACDecoder decoder, Metadata[] metadata, long mediaLength) {
+        StreamInfo streamInfo = (StreamInfo) metadata[0];
+        AudioFormat format = toAudioFileFormat(streamInfo, mediaLength).getFormat();
 logger.log(Level.DEBUG, "FLAC file reader: got stream with format " + format);
-        return new AudioFileFormat(FlacFileFormatType.FLAC, format, AudioSystem.NOT_SPECIFIED);
+        long frames = streamInfo.getTotalSamples() > 0 ? streamInfo.getTotalSamples() : AudioSystem.NOT_SPECIFIED;
+        return new FlacAudioInputStream(source, decoder, metadata, format, frames);
     }
 
     @Override
     public AudioInputStream getAudioInputStream(File file) throws UnsupportedAudioFileException, IOException {
-        InputStream inputStream = Files.newInputStream(file.toPath());
-        return getAudioInputStream(new BufferedInputStream(inputStream), (int) file.length());
+        // the decoder seeks in the file to skip
+        RandomFileInputStream source = new RandomFileInputStream(file);
+        try {
+            FLACDecoder decoder = new FLACDecoder(source);
+            return toAudioInputStream(source, decoder, readHeader(decoder, true), file.length());
+        } catch (UnsupportedAudioFileException | IOException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
     }
 
     @Override
@@ -186,7 +249,7 @@ logger.log(Level.DEBUG, "FLAC file reader: got stream with format " + format);
      *
      * @param inputStream the input stream from which the AudioInputStream should be
      *                    constructed.
-     * @param mediaLength unused
+     * @param mediaLength the bytes of the stream, or AudioSystem.NOT_SPECIFIED
      * @return an AudioInputStream object based on the audio file data contained
      * in the input stream.
      * @throws UnsupportedAudioFileException if the File does not point to a valid audio file data
@@ -194,25 +257,76 @@ logger.log(Level.DEBUG, "FLAC file reader: got stream with format " + format);
      * @throws IOException                   if an I/O exception occurs.
      */
     protected AudioInputStream getAudioInputStream(InputStream inputStream, int mediaLength) throws UnsupportedAudioFileException, IOException {
-        AudioFileFormat audioFileFormat = getAudioFileFormat(inputStream, mediaLength);
-
-        // push back the StreamInfo
-        ByteArrayOutputStream byteOutStream = new ByteArrayOutputStream();
-        BitOutputStream bitOutStream = new BitOutputStream(byteOutStream);
-        bitOutStream.writeByteBlock(Constants.STREAM_SYNC_STRING, Constants.STREAM_SYNC_STRING.length);
-        // TODO what if StreamInfo not last?
-        streamInfo.write(bitOutStream, false);
-
-        // flush bit input stream
-        BitInputStream bis = decoder.getBitInputStream();
-        int bytesLeft = bis.getInputBytesUnconsumed();
-        byte[] b = new byte[bytesLeft];
-        bis.readByteBlockAlignedNoCRC(b, bytesLeft);
-        byteOutStream.write(b);
-
-        ByteArrayInputStream byteInStream = new ByteArrayInputStream(byteOutStream.toByteArray());
-
-        SequenceInputStream sequenceInputStream = new SequenceInputStream(byteInStream, inputStream);
-        return new AudioInputStream(sequenceInputStream, audioFileFormat.getFormat(), audioFileFormat.getFrameLength());
+        if (!inputStream.markSupported()) {
+            throw new IllegalArgumentException("must be mark supported");
+        }
+        inputStream.mark(getRewindLimit(inputStream));
+        try {
+            FLACDecoder decoder = new FLACDecoder(inputStream);
+            return toAudioInputStream(inputStream, decoder, readHeader(decoder, true), mediaLength);
+        } catch (UnsupportedAudioFileException | IOException | RuntimeException e) {
+            // not consumed for the other readers
+            try {
+                inputStream.reset();
+            } catch (IOException f) {
+                logger.log(Level.INFO, f.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the bytes of a stream kept to read its FLAC bytes from the
+     * start, all the bytes the decoder reads for the metadata: the ID3v2 tag,
+     * the metadata blocks and an input buffer of the decoder. They are dropped
+     * when a conversion takes the decoder.
+     *
+     * @param inputStream the stream at its start, reset when returned
+     * @return the bytes to mark, {@link #MARK_LIMIT} if the stream is not FLAC
+     * @throws IOException if an I/O exception occurs.
+     */
+    private static int getRewindLimit(InputStream inputStream) throws IOException {
+        inputStream.mark(Integer.MAX_VALUE);
+        try {
+            DataInputStream data = new DataInputStream(inputStream);
+            long length = 4;
+            int magic = data.readInt();
+            if (magic >>> 8 == 0x494433) { // "ID3"
+                data.readUnsignedByte(); // minor version
+                int flags = data.readUnsignedByte();
+                int size = data.readInt();
+                size = (size >> 3 & 0x0fe00000) | (size >> 2 & 0x1fc000) | (size >> 1 & 0x3f80) | (size & 0x7f);
+                if ((flags & 0x10) != 0) size += 10; // footer
+                data.skipNBytes(size);
+                length += 6 + size + 4;
+                magic = data.readInt();
+            }
+            if (magic != 0x664c6143) { // "fLaC"
+                return MARK_LIMIT;
+            }
+            int bufferSize = InputStreamSource.DEFAULT_BUFFER_SIZE;
+            boolean isLast;
+            do {
+                int header = data.readInt();
+                isLast = header < 0;
+                int type = header >>> 24 & 0x7f;
+                int blockLength = header & 0xffffff;
+                if (type == Metadata.METADATA_TYPE_STREAMINFO) {
+                    byte[] block = new byte[blockLength];
+                    data.readFully(block);
+                    StreamInfo streamInfo = new StreamInfo(new BitInputStream(new ByteBufferSource(block)), blockLength, isLast);
+                    bufferSize = FLACDecoder.getFrameBufferSize(streamInfo);
+                } else {
+                    data.skipNBytes(blockLength);
+                }
+                length += 4 + blockLength;
+            } while (!isLast);
+            return (int) Math.min(length + bufferSize, Integer.MAX_VALUE);
+        } catch (EOFException e) {
+            // the decoder tells what is wrong
+            return MARK_LIMIT;
+        } finally {
+            inputStream.reset();
+        }
     }
 }
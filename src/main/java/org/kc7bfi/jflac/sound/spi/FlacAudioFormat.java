@@ -41,10 +41,31 @@ public class FlacAudioFormat extends AudioFormat {
      * gives the maximum size of decoded frames in bytes.
      */
     public static final String KEY_BLOCKSIZE_MAX = "blocksize_max";
+    /**
+     * Property key for the bit rate, as in {@link AudioFormat}. The value is
+     * of type Integer and gives the average bits per second of the file, set
+     * only if the length of the file is known.
+     */
+    public static final String KEY_BITRATE = "bitrate";
+    /**
+     * Property key for variable bit rate, as in {@link AudioFormat}. The value
+     * is of type Boolean and is always true.
+     */
+    public static final String KEY_VBR = "vbr";
 
     private final Map<String, Object> props;
 
     public FlacAudioFormat(StreamInfo streamInfo) {
+        this(streamInfo, AudioSystem.NOT_SPECIFIED);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param streamInfo the StreamInfo of the file
+     * @param bitrate    the average bits per second of the file, or AudioSystem.NOT_SPECIFIED
+     */
+    public FlacAudioFormat(StreamInfo streamInfo, int bitrate) {
         super(FlacEncoding.FLAC, streamInfo.getSampleRate(),
                 streamInfo.getBitsPerSample(), streamInfo.getChannels(),
                 /* streamInfo.maxFrameSize */AudioSystem.NOT_SPECIFIED,
@@ -54,6 +75,10 @@ public class FlacAudioFormat extends AudioFormat {
         props.put(KEY_FRAMESIZE_MAX, streamInfo.getMaxFrameSize());
         props.put(KEY_BLOCKSIZE_MIN, streamInfo.getMinBlockSize());
         props.put(KEY_BLOCKSIZE_MAX, streamInfo.getMaxBlockSize());
+        props.put(KEY_VBR, true);
+        if (bitrate > 0) {
+            props.put(KEY_BITRATE, bitrate);
+        }
     }
 
     /**
@@ -0,0 +1,150 @@
+/*
+ * libFLAC - Free Lossless Audio Codec library
+ * Copyright (C) 2001,2002,2003  Josh Coalson
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA  02111-1307, USA.
+ */
+
+package org.kc7bfi.jflac.sound.spi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import org.kc7bfi.jflac.FLACDecoder;
+import org.kc7bfi.jflac.io.RandomFileInputStream;
+import org.kc7bfi.jflac.metadata.Metadata;
+
+
+/**
+ * A FLAC audio stream that keeps its underlying stream, so that the decoder
+ * reads it directly and seeks it if it is a {@link RandomFileInputStream}.
+ * <p>
+ * The stream may come with the decoder having read its metadata, the
+ * conversion to PCM goes on with it. The FLAC bytes are read from the start
+ * of the stream again otherwise, a {@link RandomFileInputStream} is seeked,
+ * another stream is reset to the mark the audio file reader set at its start.
+ *
+ * @see Flac2PcmAudioInputStream#skip(long)
+ */
+class FlacAudioInputStream extends AudioInputStream {
+
+    /** the FLAC stream from its start */
+    private final InputStream source;
+
+    /** the decoder having read the metadata, null if none or the FLAC bytes are read */
+    private FLACDecoder decoder;
+    private Metadata[] metadata;
+
+    /**
+     * Constructor.
+     *
+     * @param source the FLAC stream from its start.
+     * @param format the format of this stream's audio data.
+     * @param length the length in sample frames of the data in this stream.
+     */
+    FlacAudioInputStream(InputStream source, AudioFormat format, long length) {
+        this(source, null, null, format, length);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param source   the FLAC stream, a {@link RandomFileInputStream} or one marked at its start.
+     * @param decoder  the decoder having read the metadata from the source, at the first frame.
+     * @param metadata the metadata read.
+     * @param format   the format of this stream's audio data.
+     * @param length   the length in sample frames of the data in this stream.
+     */
+    FlacAudioInputStream(InputStream source, FLACDecoder decoder, Metadata[] metadata, AudioFormat format, long length) {
+        super(source, format, length);
+        this.source = source;
+        this.decoder = decoder;
+        this.metadata = metadata;
+    }
+
+    /**
+     * @return the underlying FLAC stream
+     */
+    InputStream getSource() {
+        return source;
+    }
+
+    /**
+     * @return the decoder at the first frame, null if none
+     */
+    FLACDecoder getDecoder() {
+        return decoder;
+    }
+
+    /**
+     * Hand the decoder over to a conversion, the FLAC bytes are not read
+     * anymore then.
+     *
+     * @return the decoder at the first frame, null if none
+     */
+    FLACDecoder takeDecoder() {
+        if (decoder != null && !(source instanceof RandomFileInputStream)) {
+            // the bytes read by the decoder are not kept for a reset anymore
+            source.mark(0);
+        }
+        return decoder;
+    }
+
+    /**
+     * @return the metadata read by the decoder, null if none
+     */
+    Metadata[] getMetadata() {
+        return metadata;
+    }
+
+    /** the FLAC bytes are read from the start of the source, the decoder is dropped */
+    private void rewind() throws IOException {
+        if (decoder == null) return;
+        if (source instanceof RandomFileInputStream file) {
+            file.seek(0);
+        } else {
+            source.reset();
+            // the bytes are not kept for a reset anymore
+            source.mark(0);
+        }
+        decoder = null;
+        metadata = null;
+    }
+
+    /**
+     * Reads FLAC bytes. The frame length counts samples, not bytes, so the
+     * bytes are read from the source as they are.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        rewind();
+        return source.read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        rewind();
+        return source.skip(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+        rewind();
+        return source.available();
+    }
+}
@@ -20,6 +20,8 @@
 
 package org.kc7bfi.jflac.sound.spi;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -63,7 +65,7 @@ public class FlacFormatConversionProvider extends FormatConversionProvider {
         if (HAS_ENCODING) {
             return new AudioFormat.Encoding[] { FlacEncoding.FLAC, AudioFormat.Encoding.PCM_SIGNED };
         } else {
-            return new AudioFormat.Encoding[] { FlacEncoding.PCM_SIGNED };
+            return new AudioFormat.Encoding[] { FlacEncoding.PCM_SIGNED, FlacEncoding.PCM_FLOAT };
         }
     }
 
@@ -79,6 +81,14 @@ public class FlacFormatConversionProvider extends FormatConversionProvider {
                 || (channels == 1) || (channels == 2);
     }
 
+    /** not resampled, a sample frame of the target for each sample of the source */
+    private boolean isRateOK(AudioFormat targetFormat, AudioFormat sourceFormat) {
+        float sampleRate = targetFormat.getSampleRate();
+        float frameRate = targetFormat.getFrameRate();
+        return (sampleRate == AudioSystem.NOT_SPECIFIED || sampleRate == sourceFormat.getSampleRate())
+                && (frameRate == AudioSystem.NOT_SPECIFIED || frameRate == sourceFormat.getSampleRate());
+    }
+
     @Override
     public AudioFormat.Encoding[] getTargetEncodings(AudioFormat sourceFormat) {
         boolean bitSizeOK = isBitSizeOK(sourceFormat, true);
@@ -95,7 +105,7 @@ logger.finer("FLAC converter: can encode to PCM: " + sourceFormat);
         } else if (bitSizeOK && channelsOK && sourceFormat.getEncoding().equals(FlacEncoding.FLAC)) {
             // decoder
 logger.finer("FLAC converter: can decode to FLAC: " + sourceFormat);
-            return new AudioFormat.Encoding[] { AudioFormat.Encoding.PCM_SIGNED };
+            return new AudioFormat.Encoding[] { AudioFormat.Encoding.PCM_SIGNED, AudioFormat.Encoding.PCM_FLOAT };
         } else {
 logger.finer("FLAC converter: cannot de/encode: " + sourceFormat);
             return new AudioFormat.Encoding[] {};
@@ -140,21 +150,52 @@ logger.finer("FLAC converter: can encode: " + sourceFormat + " to " + targetEnco
         } else if (bitSizeOK && channelsOK
                 && sourceFormat.getEncoding().equals(FlacEncoding.FLAC)
                 && targetEncoding.equals(AudioFormat.Encoding.PCM_SIGNED)) {
-            // decode to PCM
+            // decode to PCM, the bits per sample of the stream little endian (for PCM wav) first
+logger.finer("FLAC converter: can decode: " + sourceFormat + " to " + targetEncoding);
+            int bits = sourceFormat.getSampleSizeInBits();
+            List<AudioFormat> formats = new ArrayList<>();
+            formats.add(getTargetFormat(targetEncoding, sourceFormat, bits, false));
+            if (bits != AudioSystem.NOT_SPECIFIED) {
+                for (int size : new int[] { 8, 16, 24, 32 }) {
+                    if (size != bits) {
+                        formats.add(getTargetFormat(targetEncoding, sourceFormat, size, false));
+                    }
+                }
+                for (int size : new int[] { 8, 16, 24, 32 }) {
+                    formats.add(getTargetFormat(targetEncoding, sourceFormat, size, true));
+                }
+            }
+            return formats.toArray(AudioFormat[]::new);
+        } else if (bitSizeOK && channelsOK
+                && sourceFormat.getEncoding().equals(FlacEncoding.FLAC)
+                && targetEncoding.equals(AudioFormat.Encoding.PCM_FLOAT)) {
+            // decode to float PCM
 logger.finer("FLAC converter: can decode: " + sourceFormat + " to " + targetEncoding);
             return new AudioFormat[] {
-                    new AudioFormat(sourceFormat.getSampleRate(), //
-                            sourceFormat.getSampleSizeInBits(),   // sample size in bits
-                            sourceFormat.getChannels(),           //
-                            true,                                 // signed
-                            false)
-            }; // little endian (for PCM wav)
+                    getTargetFormat(targetEncoding, sourceFormat, 32, false),
+                    getTargetFormat(targetEncoding, sourceFormat, 32, true)
+            };
         } else {
 logger.finer("FLAC converter: cannot de/encode: " + sourceFormat + " to " + targetEncoding);
             return new AudioFormat[] {};
         }
     }
 
+    /** the PCM format of the source's rate and channels */
+    private static AudioFormat getTargetFormat(AudioFormat.Encoding encoding, AudioFormat sourceFormat, int bits, boolean bigEndian) {
+        int channels = sourceFormat.getChannels();
+        int frameSize = bits == AudioSystem.NOT_SPECIFIED || channels == AudioSystem.NOT_SPECIFIED
+                ? AudioSystem.NOT_SPECIFIED
+                : ((bits + 7) / 8) * channels;
+        return new AudioFormat(encoding,
+                sourceFormat.getSampleRate(), //
+                bits,                         // sample size in bits
+                channels,                     //
+                frameSize,                    //
+                sourceFormat.getSampleRate(), // frame rate
+                bigEndian);
+    }
+
     @Override
     public AudioInputStream getAudioInputStream(AudioFormat.Encoding targetEncoding, AudioInputStream sourceStream) {
         AudioFormat[] formats = getTargetFormats(targetEncoding, sourceStream.getFormat(), false);
@@ -173,14 +214,12 @@ logger.finer("FLAC converter: cannot de/encode: " + sourceFormat + " to " + targ
             if (sourceFormat.equals(targetFormat)) {
                 return sourceStream;
             } else if (sourceFormat.getChannels() == targetFormat.getChannels()
-                    && sourceFormat.getSampleSizeInBits() == targetFormat.getSampleSizeInBits()
-                    && !targetFormat.isBigEndian()
                     && sourceFormat.getEncoding().equals(FlacEncoding.FLAC)
-                    && targetFormat.getEncoding().equals(
-                    AudioFormat.Encoding.PCM_SIGNED)) {
-                // decoder
+                    && isRateOK(targetFormat, sourceFormat)
+                    && PcmConverter.isSupported(targetFormat)) {
+                // decoder, a sample frame of PCM for each FLAC sample, packed to the target by the decoder
                 return new Flac2PcmAudioInputStream(sourceStream, targetFormat,
-                        -1);
+                        sourceStream.getFrameLength());
             } else if (sourceFormat.getChannels() == targetFormat.getChannels()
                     && sourceFormat.getSampleSizeInBits() == targetFormat.getSampleSizeInBits()
                     && sourceFormat.getEncoding().equals(
@@ -0,0 +1,132 @@
+/*
+ * libFLAC - Free Lossless Audio Codec library
+ * Copyright (C) 2001,2002,2003  Josh Coalson
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA  02111-1307, USA.
+ */
+
+package org.kc7bfi.jflac.sound.spi;
+
+import javax.sound.sampled.AudioFormat;
+
+
+/**
+ * Packs the samples of the channels of a frame to PCM of another sample
+ * size, to float or to big endian, in one pass.
+ * <p>
+ * Samples are shifted to the target size. The bits shifted out are
+ * truncated, or, with dither, rounded after adding TPDF noise of one least
+ * significant bit of the target. Float samples are scaled to -1.0 to 1.0.
+ *
+ * @author kc7bfi
+ */
+class PcmConverter {
+
+    /** the bits to shift the samples to the left, to the right when negative */
+    private final int shift;
+    private final int bytes;
+    private final boolean isFloat;
+    private final boolean bigEndian;
+    private final boolean dither;
+    private final float scale;
+    private final int min;
+    private final int max;
+    /** the state of the xorshift generator of the dither */
+    private int random = 0x2545f491;
+
+    /**
+     * The constructor.
+     *
+     * @param sourceBits the bits per sample of the stream
+     * @param target     the format to pack to, see {@link #isSupported(AudioFormat)}
+     * @param dither     true to add TPDF dither when reducing the bits per sample
+     */
+    PcmConverter(int sourceBits, AudioFormat target, boolean dither) {
+        if (!isSupported(target)) throw new IllegalArgumentException("unsupported format: " + target);
+        int targetBits = target.getSampleSizeInBits();
+        this.shift = targetBits - sourceBits;
+        this.bytes = targetBits / 8;
+        this.isFloat = target.getEncoding().equals(AudioFormat.Encoding.PCM_FLOAT);
+        this.bigEndian = target.isBigEndian();
+        this.dither = dither && shift < 0;
+        this.scale = 1f / (1L << (sourceBits - 1));
+        this.min = -1 << (targetBits - 1);
+        this.max = ~min;
+    }
+
+    /**
+     * @param format a PCM format
+     * @return true for signed PCM of 8, 16, 24 and 32 bits and 32 bit float
+     */
+    static boolean isSupported(AudioFormat format) {
+        int bits = format.getSampleSizeInBits();
+        if (format.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED)) {
+            return bits == 8 || bits == 16 || bits == 24 || bits == 32;
+        } else if (format.getEncoding().equals(AudioFormat.Encoding.PCM_FLOAT)) {
+            return bits == 32;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Pack the samples interleaved.
+     *
+     * @param channels the samples of each channel
+     * @param samples  the samples of a channel to pack
+     * @param out      the array to write to
+     * @param offset   the position in the array to write at
+     * @return the number of bytes written
+     */
+    int convert(int[][] channels, int samples, byte[] out, int offset) {
+        int start = offset;
+        for (int i = 0; i < samples; i++) {
+            for (int[] channel : channels) {
+                int value = isFloat ? Float.floatToRawIntBits(channel[i] * scale) : sample(channel[i]);
+                if (bigEndian) {
+                    for (int b = bytes - 1; b >= 0; b--)
+                        out[offset++] = (byte) (value >> (b * 8));
+                } else {
+                    for (int b = 0; b < bytes; b++)
+                        out[offset++] = (byte) (value >> (b * 8));
+                }
+            }
+        }
+        return offset - start;
+    }
+
+    /** shift a sample to the target size */
+    private int sample(int sample) {
+        if (shift >= 0) {
+            return sample << shift;
+        } else if (!dither) {
+            return sample >> -shift;
+        }
+        // the difference of two uniform values is triangular over -1 to 1 target bits
+        int noise = next() >>> (32 + shift);
+        noise -= next() >>> (32 + shift);
+        int value = (sample + noise + (1 << (-shift - 1))) >> -shift;
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /** xorshift32 */
+    private int next() {
+        random ^= random << 13;
+        random ^= random >>> 17;
+        random ^= random << 5;
+        return random;
+    }
+}
@@ -52,14 +52,14 @@ public abstract class RingedAudioInputStream extends AudioInputStream {
      */
     private final byte[] single = new byte[1];
 
-    protected final RingBuffer buffer = new RingBuffer();
+    protected final RingBuffer buffer;
 
     /**
      * Check to make sure that this stream has not been closed.
      *
      * @throws IOException
      */
-    private void checkIfStillOpen() throws IOException {
+    protected void checkIfStillOpen() throws IOException {
         if (in == null) throw new IOException("Stream closed");
     }
 
@@ -106,7 +106,8 @@ public abstract class RingedAudioInputStream extends AudioInputStream {
     public RingedAudioInputStream(InputStream in, AudioFormat format, long length, int size, int presize) {
         super(in, format, length);
         this.in = in;
-        if (format.getFrameSize() > 0) buffer.resize(format.getFrameSize() * 2);
+        // a whole sample frame fits in two
+        buffer = new RingBuffer(Math.max(size, format.getFrameSize() * 2));
     }
 
     /**
@@ -183,16 +184,17 @@ public abstract class RingedAudioInputStream extends AudioInputStream {
         checkIfStillOpen();
         int frameSize = getFormat().getFrameSize();
         int bytesRead = 0;
+        boolean eof = false;
         // can only read integral number of frames
         len -= (len % frameSize);
         // do a best effort to fill the buffer
         while (len > 0) {
-            int thisLen = len;
-            if (thisLen > buffer.getAvailable()) {
-                thisLen = buffer.getAvailable();
-            }
+            // read once, the buffer may be filled by another thread meanwhile
+            int thisLen = Math.min(len, buffer.getAvailable());
             if (thisLen < frameSize) {
                 fill();
+                // EOF is read before the data, so the data put before EOF was set is seen
+                eof = buffer.isEOF();
                 if (buffer.getAvailable() < frameSize) {
                     break;
                 }
@@ -210,7 +212,7 @@ public abstract class RingedAudioInputStream extends AudioInputStream {
             bytesRead += thisBytesRead;
         }
 
-        if (bytesRead == 0 && buffer.isEOF()) {
+        if (bytesRead == 0 && eof) {
             return -1;
         }
         return bytesRead;
@@ -20,6 +20,10 @@
 
 package org.kc7bfi.jflac.util;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
 /**
  * Utility class to calculate 16-bit CRC.
  *
@@ -287,6 +291,24 @@ public final class CRC16 {
                     (short) 0x8207,
                     (short) 0x0202};
 
+    /**
+     * Slicing-by-8 tables, entry {@code [k * 256 + b]} is the CRC of byte
+     * {@code b} followed by {@code k} zero bytes.
+     */
+    private static final int[] CRC16_SLICE_TABLE = new int[8 * 256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            CRC16_SLICE_TABLE[b] = CRC16_TABLE[b] & 0xffff;
+        }
+        for (int k = 1; k < 8; k++) {
+            for (int b = 0; b < 256; b++) {
+                int crc = CRC16_SLICE_TABLE[(k - 1) * 256 + b];
+                CRC16_SLICE_TABLE[k * 256 + b] = ((crc << 8) & 0xffff) ^ CRC16_SLICE_TABLE[crc >>> 8];
+            }
+        }
+    }
+
     /**
      * Update the CRC with the byte data.
      *
@@ -308,11 +330,74 @@ public final class CRC16 {
      * @return The updated CRC value
      */
     public static short updateBlock(byte[] data, int len, short crc) {
-        for (int i = 0; i < len; i++)
-            crc = (short) ((crc << 8) ^ CRC16_TABLE[(crc >> 8) ^ data[i]]);
-        return crc;
+        return updateBlock(data, 0, len, crc);
     }
 
+    /**
+     * Update the CRC with a range of the byte array data.
+     * Eight bytes are processed per step using the slicing-by-8 tables.
+     *
+     * @param data The byte array data
+     * @param off  The start position in the byte array
+     * @param len  The number of bytes to process
+     * @param crc  The starting CRC value
+     * @return The updated CRC value
+     */
+    public static short updateBlock(byte[] data, int off, int len, short crc) {
+        final int[] t = CRC16_SLICE_TABLE;
+        int c = crc & 0xffff;
+        int end = off + len;
+        for (; end - off >= 8; off += 8) {
+            c = t[7 * 256 + (((c >>> 8) ^ data[off]) & 0xff)]
+                    ^ t[6 * 256 + ((c ^ data[off + 1]) & 0xff)]
+                    ^ t[5 * 256 + (data[off + 2] & 0xff)]
+                    ^ t[4 * 256 + (data[off + 3] & 0xff)]
+                    ^ t[3 * 256 + (data[off + 4] & 0xff)]
+                    ^ t[2 * 256 + (data[off + 5] & 0xff)]
+                    ^ t[256 + (data[off + 6] & 0xff)]
+                    ^ t[data[off + 7] & 0xff];
+        }
+        for (; off < end; off++) {
+            c = ((c << 8) & 0xffff) ^ t[((c >>> 8) ^ data[off]) & 0xff];
+        }
+        return (short) c;
+    }
+
+    /**
+     * Update the CRC with a range of the byte buffer data.
+     * The buffer position and limit are not used nor changed.
+     *
+     * @param data The byte buffer data
+     * @param off  The start index in the byte buffer
+     * @param len  The number of bytes to process
+     * @param crc  The starting CRC value
+     * @return The updated CRC value
+     */
+    public static short updateBlock(ByteBuffer data, int off, int len, short crc) {
+        if (data.hasArray()) {
+            return updateBlock(data.array(), data.arrayOffset() + off, len, crc);
+        }
+        final int[] t = CRC16_SLICE_TABLE;
+        boolean bigEndian = data.order() == ByteOrder.BIG_ENDIAN;
+        int c = crc & 0xffff;
+        int end = off + len;
+        for (; end - off >= 8; off += 8) {
+            long w = data.getLong(off);
+            if (!bigEndian) w = Long.reverseBytes(w);
+            c = t[7 * 256 + (((c >>> 8) ^ (int) (w >>> 56)) & 0xff)]
+                    ^ t[6 * 256 + ((c ^ (int) (w >>> 48)) & 0xff)]
+                    ^ t[5 * 256 + ((int) (w >>> 40) & 0xff)]
+                    ^ t[4 * 256 + ((int) (w >>> 32) & 0xff)]
+                    ^ t[3 * 256 + ((int) (w >>> 24) & 0xff)]
+                    ^ t[2 * 256 + ((int) (w >>> 16) & 0xff)]
+                    ^ t[256 + ((int) (w >>> 8) & 0xff)]
+                    ^ t[(int) w & 0xff];
+        }
+        for (; off < end; off++) {
+            c = ((c << 8) & 0xffff) ^ t[((c >>> 8) ^ data.get(off)) & 0xff];
+        }
+        return (short) c;
+    }
 
     /**
      * Calculate the CRC over a byte array.
@@ -322,11 +407,6 @@ public final class CRC16 {
      * @return The calculated CRC value
      */
     public static short calc(byte[] data, int len) {
-        short crc = 0;
-
-        for (int i = 0; i < len; i++)
-            crc = (short) ((crc << 8) ^ CRC16_TABLE[(crc >> 8) ^ data[i]]);
-
-        return crc;
+        return updateBlock(data, 0, len, (short) 0);
     }
 }
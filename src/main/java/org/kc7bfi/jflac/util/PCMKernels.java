@@ -0,0 +1,415 @@
+/*
+ * libFLAC - Free Lossless Audio Codec library
+ * Copyright (C) 2001,2002,2003  Josh Coalson
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA  02111-1307, USA.
+ */
+
+package org.kc7bfi.jflac.util;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.kc7bfi.jflac.Constants;
+
+import static java.lang.System.getLogger;
+
+
+/**
+ * Element-wise sample kernels: stereo decorrelation, wasted bits shifting
+ * and little endian PCM packing.
+ * <p>
+ * The packing undoes the stereo decorrelation on the way, so the samples
+ * are read once and the bytes written once, several at a time.
+ * <p>
+ * {@link #getInstance()} returns kernels using the Vector API when the
+ * system property {@value #VECTOR_PROPERTY} is true and the
+ * jdk.incubator.vector module is present (run with
+ * {@code --add-modules jdk.incubator.vector}), these scalar ones otherwise.
+ * Both give identical output. The Vector API kernels are in their own
+ * source root, built with the vector profile ({@code mvn -Pvector}).
+ *
+ * @author kc7bfi
+ */
+public class PCMKernels {
+
+    private static final Logger logger = getLogger(PCMKernels.class.getName());
+
+    /** the system property enabling the Vector API kernels */
+    public static final String VECTOR_PROPERTY = "org.kc7bfi.jflac.vector";
+
+    private static final PCMKernels instance = newInstance();
+
+    /** little endian views of byte arrays */
+    private static final VarHandle SHORT = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    /** little endian views of byte buffers, heap or direct, whatever their order */
+    private static final VarHandle BUFFER_SHORT = MethodHandles.byteBufferViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle BUFFER_INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Return the kernels to use.
+     *
+     * @return The Vector API kernels if enabled and available, else the scalar kernels
+     */
+    public static PCMKernels getInstance() {
+        return instance;
+    }
+
+    private static PCMKernels newInstance() {
+        if (Boolean.getBoolean(VECTOR_PROPERTY)) {
+            try {
+                // loaded by name, the class does not link without the incubator module
+                return (PCMKernels) Class.forName(PCMKernels.class.getPackageName() + ".VectorPCMKernels")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                logger.log(Level.WARNING, "Vector API kernels not available, using scalar kernels: " + e);
+            }
+        }
+        return new PCMKernels();
+    }
+
+    /**
+     * Undo left/side stereo, the side channel becomes the right channel.
+     *
+     * @param left    The left channel
+     * @param side    The side channel (in), the right channel (out)
+     * @param samples The number of samples
+     */
+    public void undoLeftSide(int[] left, int[] side, int samples) {
+        for (int i = 0; i < samples; i++)
+            side[i] = left[i] - side[i];
+    }
+
+    /**
+     * Undo right/side stereo, the side channel becomes the left channel.
+     *
+     * @param side    The side channel (in), the left channel (out)
+     * @param right   The right channel
+     * @param samples The number of samples
+     */
+    public void undoRightSide(int[] side, int[] right, int samples) {
+        for (int i = 0; i < samples; i++)
+            side[i] += right[i];
+    }
+
+    /**
+     * Undo mid/side stereo.
+     *
+     * @param mid     The mid channel (in), the left channel (out)
+     * @param side    The side channel (in), the right channel (out)
+     * @param samples The number of samples
+     */
+    public void undoMidSide(int[] mid, int[] side, int samples) {
+        for (int i = 0; i < samples; i++) {
+            int m = (mid[i] << 1) | (side[i] & 1); // the lowest bit of mid is the one of side
+            int s = side[i];
+            mid[i] = (m + s) >> 1;
+            side[i] = (m - s) >> 1;
+        }
+    }
+
+    /**
+     * Restore the wasted bits of a channel.
+     *
+     * @param data    The samples
+     * @param samples The number of samples
+     * @param shift   The number of wasted bits
+     */
+    public void shiftLeft(int[] data, int samples, int shift) {
+        for (int i = 0; i < samples; i++)
+            data[i] <<= shift;
+    }
+
+    /**
+     * Interleave the channels into unsigned 8 bit PCM.
+     *
+     * @param channels     The samples of each channel
+     * @param channelCount The number of channels
+     * @param assignment   The channel assignment to undo, only for 2 channels
+     * @param samples      The number of samples per channel
+     * @param out          The PCM bytes (output)
+     * @param offset       The position in out of the first byte
+     * @return The position in out after the last byte
+     */
+    public int pack8(int[][] channels, int channelCount, int assignment, int samples, byte[] out, int offset) {
+        if (channelCount == 2) {
+            return stereo8(channels[0], channels[1], assignment, 0, samples, out, offset);
+        }
+        for (int i = 0; i < samples; i++) {
+            for (int channel = 0; channel < channelCount; channel++) {
+                out[offset++] = (byte) (channels[channel][i] + 0x80);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Interleave the channels into signed 16 bit little endian PCM.
+     *
+     * @param channels     The samples of each channel
+     * @param channelCount The number of channels
+     * @param assignment   The channel assignment to undo, only for 2 channels
+     * @param samples      The number of samples per channel
+     * @param out          The PCM bytes (output)
+     * @param offset       The position in out of the first byte
+     * @return The position in out after the last byte
+     */
+    public int pack16(int[][] channels, int channelCount, int assignment, int samples, byte[] out, int offset) {
+        if (channelCount == 2) {
+            return stereo16(channels[0], channels[1], assignment, 0, samples, out, offset);
+        }
+        for (int i = 0; i < samples; i++) {
+            for (int channel = 0; channel < channelCount; channel++, offset += 2) {
+                SHORT.set(out, offset, (short) channels[channel][i]);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Interleave the channels into signed 24 bit little endian PCM.
+     *
+     * @param channels     The samples of each channel
+     * @param channelCount The number of channels
+     * @param assignment   The channel assignment to undo, only for 2 channels
+     * @param samples      The number of samples per channel
+     * @param out          The PCM bytes (output)
+     * @param offset       The position in out of the first byte
+     * @return The position in out after the last byte
+     */
+    public int pack24(int[][] channels, int channelCount, int assignment, int samples, byte[] out, int offset) {
+        if (channelCount == 2) {
+            return stereo24(channels[0], channels[1], assignment, 0, samples, out, offset);
+        }
+        for (int i = 0; i < samples; i++) {
+            for (int channel = 0; channel < channelCount; channel++, offset += 3) {
+                int val = channels[channel][i];
+                SHORT.set(out, offset, (short) val);
+                out[offset + 2] = (byte) (val >> 16);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Interleave the channels into 8 bit unsigned or 16/24 bit signed little
+     * endian PCM in a buffer, for buffers without an array like direct ones.
+     * The position of the buffer is not changed.
+     *
+     * @param channels       The samples of each channel
+     * @param channelCount   The number of channels
+     * @param assignment     The channel assignment to undo, only for 2 channels
+     * @param bytesPerSample The PCM sample size, 1, 2 or 3 bytes
+     * @param samples        The number of samples per channel
+     * @param out            The PCM buffer (output)
+     * @param index          The position in out of the first byte
+     * @return The position in out after the last byte
+     */
+    public int pack(int[][] channels, int channelCount, int assignment, int bytesPerSample, int samples, ByteBuffer out, int index) {
+        if (channelCount == 2) {
+            int[] a = channels[0];
+            int[] b = channels[1];
+            switch (assignment) {
+            case Constants.CHANNEL_ASSIGNMENT_LEFT_SIDE:
+                for (int i = 0; i < samples; i++)
+                    index = put(out, index, bytesPerSample, a[i], a[i] - b[i]);
+                break;
+            case Constants.CHANNEL_ASSIGNMENT_RIGHT_SIDE:
+                for (int i = 0; i < samples; i++)
+                    index = put(out, index, bytesPerSample, a[i] + b[i], b[i]);
+                break;
+            case Constants.CHANNEL_ASSIGNMENT_MID_SIDE:
+                for (int i = 0; i < samples; i++) {
+                    int mid = (a[i] << 1) | (b[i] & 1);
+                    index = put(out, index, bytesPerSample, (mid + b[i]) >> 1, (mid - b[i]) >> 1);
+                }
+                break;
+            default:
+                for (int i = 0; i < samples; i++)
+                    index = put(out, index, bytesPerSample, a[i], b[i]);
+                break;
+            }
+            return index;
+        }
+        for (int i = 0; i < samples; i++) {
+            for (int channel = 0; channel < channelCount; channel++) {
+                index = put(out, index, bytesPerSample, channels[channel][i]);
+            }
+        }
+        return index;
+    }
+
+    /** put a left and a right sample to a buffer */
+    private static int put(ByteBuffer out, int index, int bytesPerSample, int left, int right) {
+        switch (bytesPerSample) {
+        case 1:
+            BUFFER_SHORT.set(out, index, (short) (((left + 0x80) & 0xff) | ((right + 0x80) << 8)));
+            return index + 2;
+        case 2:
+            BUFFER_INT.set(out, index, (left & 0xffff) | (right << 16));
+            return index + 4;
+        default:
+            BUFFER_INT.set(out, index, (left & 0xffffff) | (right << 24));
+            BUFFER_SHORT.set(out, index + 4, (short) (right >> 8));
+            return index + 6;
+        }
+    }
+
+    /** put a sample to a buffer */
+    private static int put(ByteBuffer out, int index, int bytesPerSample, int sample) {
+        switch (bytesPerSample) {
+        case 1:
+            out.put(index, (byte) (sample + 0x80));
+            return index + 1;
+        case 2:
+            BUFFER_SHORT.set(out, index, (short) sample);
+            return index + 2;
+        default:
+            BUFFER_SHORT.set(out, index, (short) sample);
+            out.put(index + 2, (byte) (sample >> 16));
+            return index + 3;
+        }
+    }
+
+    /**
+     * Interleave a range of stereo samples into 8 bit PCM, undoing the channel assignment.
+     *
+     * @param a          The first channel
+     * @param b          The second channel
+     * @param assignment The channel assignment to undo
+     * @param from       The first sample
+     * @param to         The sample after the last one
+     * @param out        The PCM bytes (output)
+     * @param offset     The position in out of the first byte
+     * @return The position in out after the last byte
+     */
+    protected static int stereo8(int[] a, int[] b, int assignment, int from, int to, byte[] out, int offset) {
+        switch (assignment) {
+        case Constants.CHANNEL_ASSIGNMENT_LEFT_SIDE:
+            for (int i = from; i < to; i++, offset += 2)
+                put8(out, offset, a[i], a[i] - b[i]);
+            break;
+        case Constants.CHANNEL_ASSIGNMENT_RIGHT_SIDE:
+            for (int i = from; i < to; i++, offset += 2)
+                put8(out, offset, a[i] + b[i], b[i]);
+            break;
+        case Constants.CHANNEL_ASSIGNMENT_MID_SIDE:
+            for (int i = from; i < to; i++, offset += 2) {
+                int mid = (a[i] << 1) | (b[i] & 1);
+                put8(out, offset, (mid + b[i]) >> 1, (mid - b[i]) >> 1);
+            }
+            break;
+        default:
+            for (int i = from; i < to; i++, offset += 2)
+                put8(out, offset, a[i], b[i]);
+            break;
+        }
+        return offset;
+    }
+
+    /** put a left and a right sample */
+    private static void put8(byte[] out, int offset, int left, int right) {
+        SHORT.set(out, offset, (short) (((left + 0x80) & 0xff) | ((right + 0x80) << 8)));
+    }
+
+    /**
+     * Interleave a range of stereo samples into 16 bit PCM, undoing the channel assignment.
+     *
+     * @param a          The first channel
+     * @param b          The second channel
+     * @param assignment The channel assignment to undo
+     * @param from       The first sample
+     * @param to         The sample after the last one
+     * @param out        The PCM bytes (output)
+     * @param offset     The position in out of the first byte
+     * @return The position in out after the last byte
+     */
+    protected static int stereo16(int[] a, int[] b, int assignment, int from, int to, byte[] out, int offset) {
+        switch (assignment) {
+        case Constants.CHANNEL_ASSIGNMENT_LEFT_SIDE:
+            for (int i = from; i < to; i++, offset += 4)
+                put16(out, offset, a[i], a[i] - b[i]);
+            break;
+        case Constants.CHANNEL_ASSIGNMENT_RIGHT_SIDE:
+            for (int i = from; i < to; i++, offset += 4)
+                put16(out, offset, a[i] + b[i], b[i]);
+            break;
+        case Constants.CHANNEL_ASSIGNMENT_MID_SIDE:
+            for (int i = from; i < to; i++, offset += 4) {
+                int mid = (a[i] << 1) | (b[i] & 1);
+                put16(out, offset, (mid + b[i]) >> 1, (mid - b[i]) >> 1);
+            }
+            break;
+        default:
+            for (int i = from; i < to; i++, offset += 4)
+                put16(out, offset, a[i], b[i]);
+            break;
+        }
+        return offset;
+    }
+
+    /** put a left and a right sample */
+    private static void put16(byte[] out, int offset, int left, int right) {
+        INT.set(out, offset, (left & 0xffff) | (right << 16));
+    }
+
+    /**
+     * Interleave a range of stereo samples into 24 bit PCM, undoing the channel assignment.
+     *
+     * @param a          The first channel
+     * @param b          The second channel
+     * @param assignment The channel assignment to undo
+     * @param from       The first sample
+     * @param to         The sample after the last one
+     * @param out        The PCM bytes (output)
+     * @param offset     The position in out of the first byte
+     * @return The position in out after the last byte
+     */
+    protected static int stereo24(int[] a, int[] b, int assignment, int from, int to, byte[] out, int offset) {
+        switch (assignment) {
+        case Constants.CHANNEL_ASSIGNMENT_LEFT_SIDE:
+            for (int i = from; i < to; i++, offset += 6)
+                put24(out, offset, a[i], a[i] - b[i]);
+            break;
+        case Constants.CHANNEL_ASSIGNMENT_RIGHT_SIDE:
+            for (int i = from; i < to; i++, offset += 6)
+                put24(out, offset, a[i] + b[i], b[i]);
+            break;
+        case Constants.CHANNEL_ASSIGNMENT_MID_SIDE:
+            for (int i = from; i < to; i++, offset += 6) {
+                int mid = (a[i] << 1) | (b[i] & 1);
+                put24(out, offset, (mid + b[i]) >> 1, (mid - b[i]) >> 1);
+            }
+            break;
+        default:
+            for (int i = from; i < to; i++, offset += 6)
+                put24(out, offset, a[i], b[i]);
+            break;
+        }
+        return offset;
+    }
+
+    /** put a left and a right sample */
+    private static void put24(byte[] out, int offset, int left, int right) {
+        INT.set(out, offset, (left & 0xffffff) | (right << 24));
+        SHORT.set(out, offset + 4, (short) (right >> 8));
+    }
+}
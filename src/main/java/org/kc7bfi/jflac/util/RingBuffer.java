@@ -20,37 +20,65 @@
 
 package org.kc7bfi.jflac.util;
 
-import java.lang.System.Logger;
-import java.lang.System.Logger.Level;
-
-import static java.lang.System.getLogger;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.LockSupport;
 
 
 /**
  * RingBuffer class.
+ * <p>
+ * A lock free ring for one thread putting data and one thread getting it,
+ * which may be the same thread. The cursors count every byte ever put and
+ * got, the capacity is a power of two so the index of a cursor is masked
+ * out of it. A cursor is only written by its own side, with release
+ * ordering, and read by the other side with acquire ordering, so the bytes
+ * copied before moving a cursor are visible to the other side when it sees
+ * the cursor moved. A side waiting for the other spins for a while, then
+ * parks until it is unparked by the other side.
  *
  * @author David R Robison
  */
 public class RingBuffer {
 
-    private static final Logger logger = getLogger(RingBuffer.class.getName());
-
     protected static final int DEFAULT_BUFFER_SIZE = 2048;
-    protected volatile int bufferSize;
-    protected byte[] buffer;
-    protected volatile int putHere = 0;
-    protected volatile int getHere = 0;
-    protected volatile boolean eof = false;
-    protected final Object signal = new Object();
+
+    /** times a waiting side checks again before it parks */
+    private static final int SPINS = 100;
+    /** the longest park, in case an unpark came before the park */
+    private static final long PARK_NANOS = 10_000_000L;
+
+    private static final VarHandle PUT_HERE;
+    private static final VarHandle GET_HERE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            PUT_HERE = lookup.findVarHandle(RingBuffer.class, "putHere", long.class);
+            GET_HERE = lookup.findVarHandle(RingBuffer.class, "getHere", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** replaced by a bigger one in {@link #resize(int)} only */
+    private volatile byte[] buffer;
+    /** bytes ever put, written by the putting side only */
+    private long putHere = 0;
+    /** bytes ever got, written by the getting side only */
+    private long getHere = 0;
+    private volatile boolean eof = false;
+    /** the side parked, if any */
+    private volatile Thread putter;
+    private volatile Thread getter;
 
     /**
      * Constructor.
      *
-     * @param size The size of the ring buffer
+     * @param size The size of the ring buffer, rounded up to a power of two
      */
     public RingBuffer(int size) {
-        bufferSize = size;
-        buffer = new byte[size];
+        buffer = new byte[capacity(size)];
     }
 
     /**
@@ -60,6 +88,13 @@ public class RingBuffer {
         this(DEFAULT_BUFFER_SIZE);
     }
 
+    /** the power of two not smaller than the size */
+    private static int capacity(int size) {
+        if (size <= 1) return 1;
+        if (size > 1 << 30) throw new IllegalArgumentException("size: " + size);
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+
     /**
      * Return the size of the ring buffer.
      *
@@ -70,16 +105,24 @@ public class RingBuffer {
     }
 
     /**
-     * Resize the ring buffer.
+     * Resize the ring buffer, keeping the data in it. Only the putting side
+     * may resize, the getting side may go on getting meanwhile.
      *
-     * @param newSize The new size of the ring buffer
+     * @param newSize The new size of the ring buffer, rounded up to a power of two
      */
     public void resize(int newSize) {
-        if (bufferSize >= newSize) return;
-        byte[] newBuffer = new byte[newSize];
-        System.arraycopy(buffer, 0, newBuffer, 0, buffer.length);
+        byte[] old = buffer;
+        if (old.length >= newSize) return;
+        byte[] newBuffer = new byte[capacity(newSize)];
+        // the bytes are at the same cursors in both, those not got yet are copied,
+        // at most two parts of the old ring each wrapping at most once in the new one
+        long to = putHere;
+        long from = (long) GET_HERE.getAcquire(this);
+        for (int l; from < to; from += l) {
+            l = Math.min((int) (to - from), old.length - ((int) from & (old.length - 1)));
+            copyIn(old, (int) from & (old.length - 1), newBuffer, from, l);
+        }
         buffer = newBuffer;
-        bufferSize = newSize;
     }
 
     /**
@@ -88,52 +131,38 @@ public class RingBuffer {
      * @return The byte that may be written to the ring buffer
      */
     public int putAvailable() {
-        if (putHere == getHere) return bufferSize - 1;
-        if (putHere < getHere) return getHere - putHere - 1;
-        return bufferSize - (putHere - getHere) - 1;
+        return buffer.length - (int) ((long) PUT_HERE.getAcquire(this) - (long) GET_HERE.getAcquire(this));
     }
 
     /**
-     * Empty the ring buffer.
+     * Empty the ring buffer, by the getting side.
      */
     public void empty() {
-        synchronized (signal) {
-            putHere = 0;
-            getHere = 0;
-            signal.notifyAll();
-        }
+        GET_HERE.setRelease(this, (long) PUT_HERE.getAcquire(this));
+        wakePutter();
     }
 
     /**
-     * Put data into the ring buffer.
+     * Put data into the ring buffer, waiting for space as long as needed.
      *
      * @param data   The data to write
      * @param offset The start position in the data array
      * @param len    The bytes from the data array to write
      */
     public void put(byte[] data, int offset, int len) {
-        if (len == 0) return;
-
-        synchronized (signal) {
-            // see if we have enough room
-            while (putAvailable() < len) {
-                try { signal.wait(1000); } catch (Exception e) { logger.log(Level.DEBUG, "Put.Signal.wait:" + e); }
-            }
-
-            // copy data
-            if (putHere >= getHere) {
-                int l = Math.min(len, bufferSize - putHere);
-                System.arraycopy(data, offset, buffer, putHere, l);
-                putHere += l;
-                if (putHere >= bufferSize) putHere = 0;
-                if (len > l) put(data, offset + l, len - l);
-            } else {
-                int l = Math.min(len, getHere - putHere - 1);
-                System.arraycopy(data, offset, buffer, putHere, l);
-                putHere += l;
-                if (putHere >= bufferSize) putHere = 0;
+        while (len > 0) {
+            long put = putHere;
+            byte[] buffer = this.buffer;
+            int l = Math.min(len, buffer.length - (int) (put - (long) GET_HERE.getAcquire(this)));
+            if (l == 0) {
+                waitPutAvailable(1);
+                continue;
             }
-            signal.notify();
+            copyIn(data, offset, buffer, put, l);
+            PUT_HERE.setRelease(this, put + l);
+            wakeGetter();
+            offset += l;
+            len -= l;
         }
     }
 
@@ -143,54 +172,49 @@ public class RingBuffer {
      * @return The number of bytes that may be read from the ring buffer
      */
     public int getAvailable() {
-        if (putHere == getHere) return 0;
-        if (putHere < getHere) return bufferSize - (getHere - putHere);
-        return putHere - getHere;
+        return (int) ((long) PUT_HERE.getAcquire(this) - (long) GET_HERE.getAcquire(this));
     }
 
     /**
-     * Read data from the ring buffer.
+     * Read data from the ring buffer, waiting for data while there is none
+     * and EOF is not set.
      *
      * @param data   Where to put the data
      * @param offset The offset into the data array to start putting data
      * @param len    The maximum data to read
-     * @return The number of bytes read
+     * @return The number of bytes read, -1 at EOF
      */
     public int get(byte[] data, int offset, int len) {
         if (len == 0) return 0;
-        int dataLen;
-
-        synchronized (signal) {
-            // see if we have enough data
-            while (getAvailable() <= 0) {
-                if (eof) return (-1);
-                try {
-                    signal.wait(1000);
-                } catch (Exception e) {
-                    logger.log(Level.DEBUG, "Get.Signal.wait:" + e);
-                }
-            }
-            len = Math.min(len, getAvailable());
-
-            // copy data
-            if (getHere < putHere) {
-                int l = Math.min(len, putHere - getHere);
-                System.arraycopy(buffer, getHere, data, offset, l);
-                getHere += l;
-                if (getHere >= bufferSize) getHere = 0;
-                dataLen = l;
-            } else {
-                int l = Math.min(len, bufferSize - getHere);
-                System.arraycopy(buffer, getHere, data, offset, l);
-                getHere += l;
-                if (getHere >= bufferSize) getHere = 0;
-                dataLen = l;
-                if (len > l) dataLen += get(data, offset + l, len - l);
+        long get = getHere;
+        int available;
+        while ((available = (int) ((long) PUT_HERE.getAcquire(this) - get)) == 0) {
+            if (eof) {
+                // data may have been put before eof was set
+                if ((long) PUT_HERE.getAcquire(this) == get) return -1;
+                continue;
             }
-            signal.notify();
+            waitGetAvailable(1);
         }
+        len = Math.min(len, available);
+        copyOut(buffer, get, data, offset, len);
+        GET_HERE.setRelease(this, get + len);
+        wakePutter();
+        return len;
+    }
 
-        return dataLen;
+    /**
+     * Drop data from the ring buffer, without waiting for more.
+     *
+     * @param len The maximum data to drop
+     * @return The number of bytes dropped
+     */
+    public int skip(int len) {
+        long get = getHere;
+        len = Math.max(0, Math.min(len, (int) ((long) PUT_HERE.getAcquire(this) - get)));
+        GET_HERE.setRelease(this, get + len);
+        wakePutter();
+        return len;
     }
 
     /**
@@ -209,5 +233,81 @@ public class RingBuffer {
      */
     public void setEOF(boolean eof) {
         this.eof = eof;
+        wakeGetter();
+    }
+
+    /** copies from the ring at a cursor, in two parts when it wraps */
+    private static void copyOut(byte[] ring, long from, byte[] data, int offset, int len) {
+        int i = (int) from & (ring.length - 1);
+        int l = Math.min(len, ring.length - i);
+        System.arraycopy(ring, i, data, offset, l);
+        System.arraycopy(ring, 0, data, offset + l, len - l);
+    }
+
+    /** copies into the ring at a cursor, in two parts when it wraps */
+    private static void copyIn(byte[] data, int offset, byte[] ring, long to, int len) {
+        int i = (int) to & (ring.length - 1);
+        int l = Math.min(len, ring.length - i);
+        System.arraycopy(data, offset, ring, i, l);
+        System.arraycopy(data, offset + l, ring, 0, len - l);
+    }
+
+    /**
+     * Wait for space to put data, the putting side only. The wait ends early
+     * when the thread is unparked, so the space is to be checked by the caller.
+     *
+     * @param len The bytes to be put, at most the size of the ring buffer
+     * @return True if the bytes may be put now
+     */
+    public boolean waitPutAvailable(int len) {
+        for (int i = 0; i < SPINS; i++) {
+            if (putHere + len <= (long) GET_HERE.getAcquire(this) + buffer.length) return true;
+            Thread.onSpinWait();
+        }
+        putter = Thread.currentThread();
+        // the volatile read orders after the write of the putter, so a get
+        // either is seen here or sees the putter and unparks it
+        if (putHere + len > (long) GET_HERE.getVolatile(this) + buffer.length) {
+            LockSupport.parkNanos(this, PARK_NANOS);
+        }
+        putter = null;
+        return putAvailable() >= len;
+    }
+
+    /**
+     * Wait for data to get, the getting side only. The wait ends early
+     * when the thread is unparked, so the data is to be checked by the caller.
+     *
+     * @param len The bytes to be got, at most the size of the ring buffer
+     * @return True if the bytes may be got now, or EOF is set
+     */
+    public boolean waitGetAvailable(int len) {
+        for (int i = 0; i < SPINS; i++) {
+            if (getHere + len <= (long) PUT_HERE.getAcquire(this) || eof) return true;
+            Thread.onSpinWait();
+        }
+        getter = Thread.currentThread();
+        if (getHere + len > (long) PUT_HERE.getVolatile(this) && !eof) {
+            LockSupport.parkNanos(this, PARK_NANOS);
+        }
+        getter = null;
+        return getAvailable() >= len || eof;
+    }
+
+    /**
+     * unparks the putting side if parked, the fence orders the move of the
+     * cursor before the read of the putter, see {@link #waitPutAvailable(int)}
+     */
+    private void wakePutter() {
+        VarHandle.fullFence();
+        Thread thread = putter;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    /** unparks the getting side if parked, see {@link #wakePutter()} */
+    private void wakeGetter() {
+        VarHandle.fullFence();
+        Thread thread = getter;
+        if (thread != null) LockSupport.unpark(thread);
     }
 }
@@ -0,0 +1,226 @@
+/*
+ * libFLAC - Free Lossless Audio Codec library
+ * Copyright (C) 2001,2002,2003  Josh Coalson
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA  02111-1307, USA.
+ */
+
+package org.kc7bfi.jflac.util;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+import org.kc7bfi.jflac.Constants;
+
+import static jdk.incubator.vector.VectorOperators.ASHR;
+import static jdk.incubator.vector.VectorOperators.I2L;
+import static jdk.incubator.vector.VectorOperators.LSHL;
+
+
+/**
+ * Sample kernels using the Vector API, see {@link PCMKernels#getInstance()}.
+ * <p>
+ * Mono and stereo PCM are packed here, more channels by the scalar kernels.
+ * Stereo has a loop for each channel assignment, undone in the vectors.
+ * The packed bytes of a vector are stored as a whole vector, the unused end
+ * is overwritten by the next store, so vectors are only stored where the
+ * whole vector fits in the bytes to be written.
+ *
+ * @author kc7bfi
+ */
+class VectorPCMKernels extends PCMKernels {
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES = INTS.withLanes(byte.class);
+    private static final int LANES = INTS.length();
+    /** as many ints as there are longs in a vector */
+    private static final VectorSpecies<Integer> HALF_INTS = VectorSpecies.of(int.class, VectorShape.forBitSize(INTS.vectorBitSize() / 2));
+    private static final VectorSpecies<Long> LONGS = INTS.withLanes(long.class);
+    private static final int LONG_LANES = LONGS.length();
+
+    /** moves the lower 2 bytes of each int to the front */
+    private static final VectorShuffle<Byte> PACK_16 = VectorShuffle.fromOp(BYTES, i -> i < 2 * LANES ? i / 2 * 4 + i % 2 : 0);
+    /** moves the lower 3 bytes of each int to the front */
+    private static final VectorShuffle<Byte> PACK_24 = VectorShuffle.fromOp(BYTES, i -> i < 3 * LANES ? i / 3 * 4 + i % 3 : 0);
+    /** moves the lower 6 bytes of each long to the front */
+    private static final VectorShuffle<Byte> PACK_48 = VectorShuffle.fromOp(BYTES, i -> i < 6 * LONG_LANES ? i / 6 * 8 + i % 6 : 0);
+
+    @Override
+    public void undoLeftSide(int[] left, int[] side, int samples) {
+        int i = 0;
+        for (int upper = INTS.loopBound(samples); i < upper; i += LANES) {
+            IntVector l = IntVector.fromArray(INTS, left, i);
+            IntVector s = IntVector.fromArray(INTS, side, i);
+            l.sub(s).intoArray(side, i);
+        }
+        for (; i < samples; i++)
+            side[i] = left[i] - side[i];
+    }
+
+    @Override
+    public void undoRightSide(int[] side, int[] right, int samples) {
+        int i = 0;
+        for (int upper = INTS.loopBound(samples); i < upper; i += LANES) {
+            IntVector s = IntVector.fromArray(INTS, side, i);
+            IntVector r = IntVector.fromArray(INTS, right, i);
+            s.add(r).intoArray(side, i);
+        }
+        for (; i < samples; i++)
+            side[i] += right[i];
+    }
+
+    @Override
+    public void undoMidSide(int[] mid, int[] side, int samples) {
+        int i = 0;
+        for (int upper = INTS.loopBound(samples); i < upper; i += LANES) {
+            IntVector s = IntVector.fromArray(INTS, side, i);
+            IntVector m = IntVector.fromArray(INTS, mid, i).lanewise(LSHL, 1).or(s.and(1));
+            m.add(s).lanewise(ASHR, 1).intoArray(mid, i);
+            m.sub(s).lanewise(ASHR, 1).intoArray(side, i);
+        }
+        for (; i < samples; i++) {
+            int m = (mid[i] << 1) | (side[i] & 1);
+            int s = side[i];
+            mid[i] = (m + s) >> 1;
+            side[i] = (m - s) >> 1;
+        }
+    }
+
+    @Override
+    public void shiftLeft(int[] data, int samples, int shift) {
+        int i = 0;
+        for (int upper = INTS.loopBound(samples); i < upper; i += LANES) {
+            IntVector.fromArray(INTS, data, i).lanewise(LSHL, shift).intoArray(data, i);
+        }
+        for (; i < samples; i++)
+            data[i] <<= shift;
+    }
+
+    @Override
+    public int pack16(int[][] channels, int channelCount, int assignment, int samples, byte[] out, int offset) {
+        if (channelCount == 2) {
+            int[] a = channels[0];
+            int[] b = channels[1];
+            int i = 0;
+            int upper = INTS.loopBound(samples);
+            switch (assignment) {
+            case Constants.CHANNEL_ASSIGNMENT_LEFT_SIDE:
+                for (; i < upper; i += LANES, offset += 4 * LANES) {
+                    IntVector left = IntVector.fromArray(INTS, a, i);
+                    stereo16(left, left.sub(IntVector.fromArray(INTS, b, i)), out, offset);
+                }
+                break;
+            case Constants.CHANNEL_ASSIGNMENT_RIGHT_SIDE:
+                for (; i < upper; i += LANES, offset += 4 * LANES) {
+                    IntVector right = IntVector.fromArray(INTS, b, i);
+                    stereo16(IntVector.fromArray(INTS, a, i).add(right), right, out, offset);
+                }
+                break;
+            case Constants.CHANNEL_ASSIGNMENT_MID_SIDE:
+                for (; i < upper; i += LANES, offset += 4 * LANES) {
+                    IntVector side = IntVector.fromArray(INTS, b, i);
+                    IntVector mid = IntVector.fromArray(INTS, a, i).lanewise(LSHL, 1).or(side.and(1));
+                    stereo16(mid.add(side).lanewise(ASHR, 1), mid.sub(side).lanewise(ASHR, 1), out, offset);
+                }
+                break;
+            default:
+                for (; i < upper; i += LANES, offset += 4 * LANES) {
+                    stereo16(IntVector.fromArray(INTS, a, i), IntVector.fromArray(INTS, b, i), out, offset);
+                }
+                break;
+            }
+            return stereo16(a, b, assignment, i, samples, out, offset);
+        } else if (channelCount == 1) {
+            int[] data = channels[0];
+            int end = offset + 2 * samples;
+            int i = 0;
+            for (; offset + 4 * LANES <= end; i += LANES, offset += 2 * LANES) {
+                IntVector.fromArray(INTS, data, i).reinterpretAsBytes().rearrange(PACK_16).intoArray(out, offset);
+            }
+            for (; i < samples; i++) {
+                out[offset++] = (byte) data[i];
+                out[offset++] = (byte) (data[i] >> 8);
+            }
+            return offset;
+        }
+        return super.pack16(channels, channelCount, assignment, samples, out, offset);
+    }
+
+    @Override
+    public int pack24(int[][] channels, int channelCount, int assignment, int samples, byte[] out, int offset) {
+        if (channelCount == 2) {
+            int[] a = channels[0];
+            int[] b = channels[1];
+            int i = 0;
+            int end = offset + 6 * samples;
+            switch (assignment) {
+            case Constants.CHANNEL_ASSIGNMENT_LEFT_SIDE:
+                for (; offset + 8 * LONG_LANES <= end; i += LONG_LANES, offset += 6 * LONG_LANES) {
+                    IntVector left = IntVector.fromArray(HALF_INTS, a, i);
+                    stereo24(left, left.sub(IntVector.fromArray(HALF_INTS, b, i)), out, offset);
+                }
+                break;
+            case Constants.CHANNEL_ASSIGNMENT_RIGHT_SIDE:
+                for (; offset + 8 * LONG_LANES <= end; i += LONG_LANES, offset += 6 * LONG_LANES) {
+                    IntVector right = IntVector.fromArray(HALF_INTS, b, i);
+                    stereo24(IntVector.fromArray(HALF_INTS, a, i).add(right), right, out, offset);
+                }
+                break;
+            case Constants.CHANNEL_ASSIGNMENT_MID_SIDE:
+                for (; offset + 8 * LONG_LANES <= end; i += LONG_LANES, offset += 6 * LONG_LANES) {
+                    IntVector side = IntVector.fromArray(HALF_INTS, b, i);
+                    IntVector mid = IntVector.fromArray(HALF_INTS, a, i).lanewise(LSHL, 1).or(side.and(1));
+                    stereo24(mid.add(side).lanewise(ASHR, 1), mid.sub(side).lanewise(ASHR, 1), out, offset);
+                }
+                break;
+            default:
+                for (; offset + 8 * LONG_LANES <= end; i += LONG_LANES, offset += 6 * LONG_LANES) {
+                    stereo24(IntVector.fromArray(HALF_INTS, a, i), IntVector.fromArray(HALF_INTS, b, i), out, offset);
+                }
+                break;
+            }
+            return stereo24(a, b, assignment, i, samples, out, offset);
+        } else if (channelCount == 1) {
+            int[] data = channels[0];
+            int end = offset + 3 * samples;
+            int i = 0;
+            for (; offset + 4 * LANES <= end; i += LANES, offset += 3 * LANES) {
+                IntVector.fromArray(INTS, data, i).reinterpretAsBytes().rearrange(PACK_24).intoArray(out, offset);
+            }
+            for (; i < samples; i++) {
+                out[offset++] = (byte) data[i];
+                out[offset++] = (byte) (data[i] >> 8);
+                out[offset++] = (byte) (data[i] >> 16);
+            }
+            return offset;
+        }
+        return super.pack24(channels, channelCount, assignment, samples, out, offset);
+    }
+
+    /** a little endian int holds the left and the right sample */
+    private static void stereo16(IntVector left, IntVector right, byte[] out, int offset) {
+        left.and(0xffff).or(right.lanewise(LSHL, 16)).reinterpretAsBytes().intoArray(out, offset);
+    }
+
+    /** the lower 6 bytes of a little endian long hold the left and the right sample */
+    private static void stereo24(IntVector left, IntVector right, byte[] out, int offset) {
+        LongVector l = (LongVector) left.convertShape(I2L, LONGS, 0);
+        LongVector r = (LongVector) right.convertShape(I2L, LONGS, 0);
+        l.and(0xffffffL).or(r.lanewise(LSHL, 24)).reinterpretAsBytes().rearrange(PACK_48).intoArray(out, offset);
+    }
+}
@@ -0,0 +1,499 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.kc7bfi.jflac;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.kc7bfi.jflac.frame.Frame;
+import org.kc7bfi.jflac.io.ByteBufferSource;
+import org.kc7bfi.jflac.io.ByteSource;
+import org.kc7bfi.jflac.io.ChannelSource;
+import org.kc7bfi.jflac.io.InputStreamSource;
+import org.kc7bfi.jflac.io.MappedFileSource;
+import org.kc7bfi.jflac.io.RandomFileInputStream;
+import org.kc7bfi.jflac.metadata.Metadata;
+import org.kc7bfi.jflac.metadata.SeekPoint;
+import org.kc7bfi.jflac.metadata.StreamInfo;
+import org.kc7bfi.jflac.util.ByteData;
+import org.kc7bfi.jflac.util.CRC8;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+
+/**
+ * FLACDecoderTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ */
+class FLACDecoderTest {
+
+    String flac = "src/test/resources/test.flac";
+
+    /** frames decoded before measuring, the buffers grow to their size on these */
+    static final int WARMUP_FRAMES = 10;
+    /** frames measured, test.flac has some more */
+    static final int MEASURED_FRAMES = 60;
+
+    @Test
+    void testMD5() throws Exception {
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+        FLACDecoder decoder = new FLACDecoder(Files.newInputStream(Paths.get(flac)));
+        decoder.readMetadata();
+        ByteData pcm = null;
+        Frame frame;
+        while ((frame = decoder.readNextFrame()) != null) {
+            pcm = decoder.decodeFrame(frame, pcm);
+            md5.update(pcm.getData(), 0, pcm.getLen());
+        }
+        assertEquals(0, decoder.getBadFrames());
+        // the signature of the encoder is the MD5 of the PCM, little endian signed
+        assertArrayEquals(decoder.getStreamInfo().getMD5sum(), md5.digest());
+    }
+
+    @Test
+    void testKeptPCMData() throws Exception {
+        List<ByteData> kept = new ArrayList<>();
+        FLACDecoder decoder = new FLACDecoder(Files.newInputStream(Paths.get(flac)));
+        decoder.addPCMProcessor(new PCMProcessor() {
+            @Override
+            public void processStreamInfo(StreamInfo streamInfo) {
+            }
+
+            @Override
+            public void processPCM(ByteData pcm) {
+                kept.add(pcm);
+            }
+        });
+        decoder.decode();
+        // the data kept is not overwritten by the frames after it
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+        for (ByteData pcm : kept) {
+            md5.update(pcm.getData(), 0, pcm.getLen());
+        }
+        assertEquals(96, kept.size());
+        assertArrayEquals(decoder.getStreamInfo().getMD5sum(), md5.digest());
+    }
+
+    @Test
+    void testSteadyStateAllocatesNothing() throws Exception {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(mx.isThreadAllocatedMemorySupported());
+        mx.setThreadAllocatedMemoryEnabled(true);
+
+        byte[] data = Files.readAllBytes(Paths.get(flac));
+        long thread = Thread.currentThread().getId();
+
+        // the jit may still allocate while it compiles the first rounds, the fewest is checked
+        long fewest = Long.MAX_VALUE;
+        for (int round = 0; round < 20 && fewest > 0; round++) {
+            FLACDecoder decoder = new FLACDecoder(new ByteArrayInputStream(data));
+            decoder.readMetadata();
+            ByteData pcm = null;
+            for (int i = 0; i < WARMUP_FRAMES; i++) {
+                pcm = decoder.decodeFrame(decoder.readNextFrame(), pcm);
+            }
+
+            long before = mx.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < MEASURED_FRAMES; i++) {
+                Frame frame = decoder.readNextFrame();
+                pcm = decoder.decodeFrame(frame, pcm);
+            }
+            long after = mx.getThreadAllocatedBytes(thread);
+
+            assertNotNull(pcm);
+            fewest = Math.min(fewest, after - before);
+        }
+        assertEquals(0, fewest);
+    }
+
+    @Test
+    void testDecodeLoopAllocatesNothing() throws Exception {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(mx.isThreadAllocatedMemorySupported());
+        mx.setThreadAllocatedMemoryEnabled(true);
+
+        byte[] data = Files.readAllBytes(Paths.get(flac));
+        long thread = Thread.currentThread().getId();
+
+        long fewest = Long.MAX_VALUE;
+        for (int round = 0; round < 20 && fewest > 0; round++) {
+            long[] allocated = new long[2];
+            int[] frames = new int[1];
+            FLACDecoder decoder = new FLACDecoder(new ByteArrayInputStream(data));
+            decoder.setReusePCMData(true);
+            decoder.addPCMProcessor(new PCMProcessor() {
+                @Override
+                public void processStreamInfo(StreamInfo streamInfo) {
+                }
+
+                @Override
+                public void processPCM(ByteData pcm) {
+                    if (frames[0] == WARMUP_FRAMES) allocated[0] = mx.getThreadAllocatedBytes(thread);
+                    if (frames[0] == WARMUP_FRAMES + MEASURED_FRAMES) allocated[1] = mx.getThreadAllocatedBytes(thread);
+                    frames[0]++;
+                }
+            });
+            decoder.decode();
+
+            fewest = Math.min(fewest, allocated[1] - allocated[0]);
+        }
+        assertEquals(0, fewest);
+    }
+
+    @Test
+    void testDecodeInto() throws Exception {
+        FLACDecoder decoder = new FLACDecoder(Files.newInputStream(Paths.get(flac)));
+        decoder.readMetadata();
+        ByteBuffer heap = ByteBuffer.allocate(64 * 1024);
+        ByteBuffer direct = ByteBuffer.allocateDirect(64 * 1024);
+        byte[] array = new byte[64 * 1024];
+        Frame frame;
+        while ((frame = decoder.readNextFrame()) != null) {
+            int size = decoder.getPCMSize(frame);
+            assertEquals(frame.header.blockSize * 2 * 2, size);
+
+            heap.clear().position(3);
+            direct.clear().position(5);
+            assertEquals(size, decoder.decodeInto(heap));
+            assertEquals(size, decoder.decodeInto(direct));
+            assertEquals(size, decoder.decodeInto(array, 7));
+            ByteData pcm = decoder.decodeFrame(frame, null);
+            assertEquals(size, pcm.getLen());
+
+            byte[] expected = Arrays.copyOf(pcm.getData(), size);
+            byte[] actual = new byte[size];
+            heap.flip().position(3);
+            heap.get(actual);
+            assertArrayEquals(expected, actual);
+            direct.flip().position(5);
+            direct.get(actual);
+            assertArrayEquals(expected, actual);
+            assertArrayEquals(expected, Arrays.copyOfRange(array, 7, 7 + size));
+        }
+    }
+
+    /** packs the samples as 16 bit little endian pcm */
+    static class SampleCollector implements SampleProcessor {
+        final boolean isFloat;
+        final ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+
+        SampleCollector(boolean isFloat) {
+            this.isFloat = isFloat;
+        }
+
+        @Override
+        public void processStreamInfo(StreamInfo streamInfo) {
+        }
+
+        @Override
+        public boolean isFloat() {
+            return isFloat;
+        }
+
+        @Override
+        public void processSamples(int[][] samples, int count) {
+            assertEquals(2, samples.length);
+            for (int i = 0; i < count; i++) {
+                for (int[] channel : samples) {
+                    pcm.write(channel[i]);
+                    pcm.write(channel[i] >> 8);
+                }
+            }
+        }
+
+        @Override
+        public void processSamples(float[][] samples, int count) {
+            assertEquals(2, samples.length);
+            for (int i = 0; i < count; i++) {
+                for (float[] channel : samples) {
+                    int sample = Math.round(channel[i] * 32768);
+                    pcm.write(sample);
+                    pcm.write(sample >> 8);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testSampleProcessor() throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        FLACDecoder decoder = new FLACDecoder(Files.newInputStream(Paths.get(flac)));
+        decoder.readMetadata();
+        Frame frame;
+        while ((frame = decoder.readNextFrame()) != null) {
+            ByteData pcm = decoder.decodeFrame(frame, null);
+            expected.write(pcm.getData(), 0, pcm.getLen());
+        }
+
+        for (boolean parallel : new boolean[] {false, true}) {
+            SampleCollector ints = new SampleCollector(false);
+            SampleCollector floats = new SampleCollector(true);
+            decoder = parallel ? new FLACDecoder(new MappedFileSource(Paths.get(flac))) : new FLACDecoder(Files.newInputStream(Paths.get(flac)));
+            decoder.addSampleProcessor(ints);
+            decoder.addSampleProcessor(floats);
+            if (parallel) {
+                decoder.decode(ForkJoinPool.commonPool());
+            } else {
+                decoder.decode();
+            }
+
+            assertArrayEquals(expected.toByteArray(), ints.pcm.toByteArray());
+            assertArrayEquals(expected.toByteArray(), floats.pcm.toByteArray());
+        }
+    }
+
+    /** collects the pcm of a decode */
+    static class PCMCollector implements PCMProcessor {
+        final ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+
+        @Override
+        public void processStreamInfo(StreamInfo streamInfo) {
+        }
+
+        @Override
+        public void processPCM(ByteData data) {
+            pcm.write(data.getData(), 0, data.getLen());
+        }
+    }
+
+    @Test
+    void testParallelDecode() throws Exception {
+        PCMCollector expected = new PCMCollector();
+        FLACDecoder decoder = new FLACDecoder(Files.newInputStream(Paths.get(flac)));
+        decoder.addPCMProcessor(expected);
+        decoder.decode();
+
+        // frames cross the chunks of one largest frame, and of the default
+        for (int frames : new int[] {1, 16}) {
+            for (ByteSource source : sources()) {
+                try (source) {
+                    PCMCollector actual = new PCMCollector();
+                    decoder = new FLACDecoder(source);
+                    decoder.setFramesPerChunk(frames);
+                    decoder.addPCMProcessor(actual);
+                    decoder.decode(ForkJoinPool.commonPool());
+                    assertEquals(0, decoder.getBadFrames());
+                    assertArrayEquals(expected.pcm.toByteArray(), actual.pcm.toByteArray(), source.getClass().getName() + " " + frames);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testParallelDecodeBadFrames() throws Exception {
+        // the positions of the frames
+        byte[] bytes = Files.readAllBytes(Paths.get(flac));
+        List<Long> positions = new ArrayList<>();
+        FLACDecoder reader = new FLACDecoder(new ByteBufferSource(bytes));
+        reader.addFrameListener(new FrameCollector() {
+            @Override
+            public void processFrame(Frame frame) {
+                positions.add(reader.getFramePosition());
+            }
+        });
+        reader.addPCMProcessor(new PCMCollector());
+        reader.decode();
+
+        // the CRC-16 of every frame is broken, the first frame starts the first chunk
+        for (int i = 0; i < positions.size(); i++) {
+            long frameEnd = i + 1 < positions.size() ? positions.get(i + 1) : bytes.length;
+            bytes[(int) frameEnd - 1] ^= 0x55;
+        }
+        PCMCollector expected = new PCMCollector();
+        FLACDecoder decoder = new FLACDecoder(new ByteBufferSource(bytes));
+        decoder.addPCMProcessor(expected);
+        decoder.decode();
+        assertEquals(positions.size(), decoder.getBadFrames());
+
+        for (int frames : new int[] {1, 16}) {
+            PCMCollector actual = new PCMCollector();
+            decoder = new FLACDecoder(new ByteBufferSource(bytes));
+            decoder.setFramesPerChunk(frames);
+            decoder.addPCMProcessor(actual);
+            decoder.decode(ForkJoinPool.commonPool());
+            assertEquals(positions.size(), decoder.getBadFrames(), "frames " + frames);
+            assertArrayEquals(expected.pcm.toByteArray(), actual.pcm.toByteArray(), "frames " + frames);
+        }
+    }
+
+    /** each source reads the chunks of a parallel decode its own way */
+    List<ByteSource> sources() throws Exception {
+        return List.of(
+                new ByteBufferSource(Files.readAllBytes(Paths.get(flac))),
+                new MappedFileSource(Paths.get(flac)),
+                new ChannelSource(Paths.get(flac)),
+                new InputStreamSource(new RandomFileInputStream(flac)));
+    }
+
+    /** the pcm of the frames of a decode, by the first sample of the frame */
+    static class FrameCollector implements PCMProcessor, FrameListener {
+        final Map<Long, byte[]> pcm = new TreeMap<>();
+        long sample;
+
+        @Override
+        public void processStreamInfo(StreamInfo streamInfo) {
+        }
+
+        @Override
+        public void processPCM(ByteData data) {
+            pcm.put(sample, Arrays.copyOf(data.getData(), data.getLen()));
+        }
+
+        @Override
+        public void processMetadata(Metadata metadata) {
+        }
+
+        @Override
+        public void processFrame(Frame frame) {
+            sample = frame.header.sampleNumber;
+        }
+
+        @Override
+        public void processError(String msg) {
+        }
+    }
+
+    @Test
+    void testVerification() throws Exception {
+        byte[] data = Files.readAllBytes(Paths.get(flac));
+        FLACDecoder decoder = new FLACDecoder(new ByteBufferSource(data));
+        decoder.readMetadata();
+        List<SeekPoint> frames = new FrameScanner(decoder).scan();
+        FrameCollector original = new FrameCollector();
+        decoder = new FLACDecoder(new ByteArrayInputStream(data));
+        decoder.addPCMProcessor(original);
+        decoder.addFrameListener(original);
+        decoder.decode();
+        assertEquals(frames.size(), original.pcm.size());
+
+        // the last byte of the frame CRC-16 of frame 10
+        byte[] corrupt = data.clone();
+        corrupt[(int) frames.get(11).getStreamOffset() - 1] ^= 0x01;
+        // the header CRC-8 of frame 20 follows the first bytes it matches
+        int header = (int) frames.get(20).getStreamOffset();
+        int crc8 = header + 4;
+        while (CRC8.calc(Arrays.copyOfRange(data, header, crc8), crc8 - header) != data[crc8]) crc8++;
+        corrupt[crc8] ^= 0x01;
+        long frame10 = frames.get(10).getSampleNumber();
+        long frame20 = frames.get(20).getSampleNumber();
+
+        for (boolean parallel : new boolean[] {false, true}) {
+            Map<FLACDecoder.Verification, Integer> badFrames = new TreeMap<>();
+            for (FLACDecoder.Verification verification : FLACDecoder.Verification.values()) {
+                FrameCollector collector = new FrameCollector();
+                decoder = parallel ? new FLACDecoder(new ByteBufferSource(corrupt)) : new FLACDecoder(new ByteArrayInputStream(corrupt));
+                decoder.setVerification(verification);
+                decoder.addPCMProcessor(collector);
+                decoder.addFrameListener(collector);
+                if (parallel) {
+                    decoder.decode(ForkJoinPool.commonPool());
+                } else {
+                    decoder.decode();
+                }
+
+                String message = verification + (parallel ? " parallel" : "");
+                badFrames.put(verification, decoder.getBadFrames());
+                switch (verification) {
+                case FULL -> {
+                    // the frame of a bad CRC-16 is zeros, the one of a bad header is left out
+                    assertArrayEquals(new byte[original.pcm.get(frame10).length], collector.pcm.get(frame10), message);
+                    assertFalse(collector.pcm.containsKey(frame20), message);
+                }
+                case HEADER_ONLY -> {
+                    assertArrayEquals(original.pcm.get(frame10), collector.pcm.get(frame10), message);
+                    assertFalse(collector.pcm.containsKey(frame20), message);
+                }
+                case NONE -> {
+                    assertEquals(0, decoder.getBadFrames(), message);
+                    assertArrayEquals(original.pcm.get(frame10), collector.pcm.get(frame10), message);
+                    assertArrayEquals(original.pcm.get(frame20), collector.pcm.get(frame20), message);
+                }
+                }
+                for (long sample : original.pcm.keySet()) {
+                    if (sample != frame10 && sample != frame20) {
+                        assertArrayEquals(original.pcm.get(sample), collector.pcm.get(sample), message + " " + sample);
+                    }
+                }
+            }
+            // resyncing after the bad header may find false sync codes, the same in both
+            assertTrue(badFrames.get(FLACDecoder.Verification.HEADER_ONLY) >= 1);
+            assertEquals(badFrames.get(FLACDecoder.Verification.HEADER_ONLY) + 1, (int) badFrames.get(FLACDecoder.Verification.FULL));
+        }
+    }
+
+    @Test
+    void testSeekWithSeekTable() throws Exception {
+        byte[] data = Files.readAllBytes(Paths.get(flac));
+        FLACDecoder decoder = new FLACDecoder(new ByteBufferSource(data));
+        decoder.readMetadata();
+        int[] expected = new int[(int) decoder.getStreamInfo().getTotalSamples()];
+        Frame frame;
+        while ((frame = decoder.readNextFrame()) != null) {
+            System.arraycopy(decoder.getChannelData()[0].getOutput(), 0, expected, (int) frame.header.sampleNumber, frame.header.blockSize);
+        }
+        decoder = new FLACDecoder(new ByteBufferSource(data));
+        decoder.readMetadata();
+        int firstFrame = (int) decoder.getBitInputStream().getPosition();
+        List<SeekPoint> frames = new FrameScanner(decoder).scan();
+
+        // test.flac has no seek table, one with a point every 10 frames and a placeholder is added
+        ByteArrayOutputStream flacWithTable = new ByteArrayOutputStream();
+        DataOutputStream os = new DataOutputStream(flacWithTable);
+        int last = 4;
+        while ((data[last] & 0x80) == 0) {
+            last += 4 + (((data[last + 1] & 0xff) << 16) | ((data[last + 2] & 0xff) << 8) | (data[last + 3] & 0xff));
+        }
+        data[last] &= 0x7f;
+        os.write(data, 0, firstFrame);
+        int points = (frames.size() + 9) / 10 + 1;
+        os.writeInt(0x83 << 24 | points * 18);
+        for (int i = 0; i < frames.size(); i += 10) {
+            os.writeLong(frames.get(i).getSampleNumber());
+            os.writeLong(frames.get(i).getStreamOffset() - firstFrame);
+            os.writeShort(frames.get(i).getFrameSamples());
+        }
+        os.writeLong(-1);
+        os.writeLong(0);
+        os.writeShort(0);
+        os.write(data, firstFrame, data.length - firstFrame);
+        int shift = 4 + points * 18;
+
+        decoder = new FLACDecoder(new ByteBufferSource(flacWithTable.toByteArray()));
+        decoder.readMetadata();
+        assertEquals(points, decoder.getSeekTable().numberOfPoints());
+        for (long target : new long[] {440999, 0, 4607, 4608, 100_000, 12345, 300_001, 46080}) {
+            SeekPoint point = decoder.seek(target);
+            assertNotNull(point);
+            assertEquals(target, point.getSampleNumber() + point.getFrameSamples());
+            assertTrue(point.getFrameSamples() < decoder.getBlockSize());
+            int i = (int) (point.getSampleNumber() / decoder.getStreamInfo().getMaxBlockSize());
+            assertEquals(frames.get(i).getStreamOffset() + shift, point.getStreamOffset());
+            assertEquals(expected[(int) target], decoder.getChannelData()[0].getOutput()[point.getFrameSamples()]);
+        }
+    }
+}
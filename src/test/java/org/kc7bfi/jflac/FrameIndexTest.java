@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.kc7bfi.jflac;
+
+import java.io.DataInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+import org.kc7bfi.jflac.frame.Frame;
+import org.kc7bfi.jflac.io.MappedFileSource;
+import org.kc7bfi.jflac.metadata.SeekPoint;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * FrameIndexTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ */
+class FrameIndexTest {
+
+    String flac = "src/test/resources/test.flac";
+
+    @Test
+    void testCache() throws Exception {
+        Path dir = Files.createTempDirectory("jflac");
+        Path copy = dir.resolve("test.flac");
+        Files.copy(Paths.get(flac), copy);
+
+        FrameIndex built = FrameIndex.of(copy);
+        assertEquals(96, built.size());
+        assertTrue(Files.exists(built.getIndexFile()));
+        assertEquals(built.getIndexFile(), dir.resolve("test.flac" + FrameIndex.EXTENSION));
+
+        FrameIndex read = FrameIndex.of(copy);
+        assertEquals(built.size(), read.size());
+        for (int i = 0; i < built.size(); i++) {
+            assertEquals(built.getSeekPoint(i).toString(), read.getSeekPoint(i).toString());
+        }
+
+        // a modified file gets a new index
+        FileTime modified = FileTime.fromMillis(Files.getLastModifiedTime(copy).toMillis() - 60_000);
+        Files.setLastModifiedTime(copy, modified);
+        assertEquals(96, FrameIndex.of(copy).size());
+        try (DataInputStream is = new DataInputStream(Files.newInputStream(built.getIndexFile()))) {
+            is.skipBytes(16);
+            assertEquals(modified.toMillis(), is.readLong());
+        }
+
+        Path cache = dir.resolve("cache");
+        FrameIndex cached = FrameIndex.of(copy, cache);
+        assertEquals(96, cached.size());
+        assertEquals(cache, cached.getIndexFile().getParent());
+        assertTrue(Files.exists(cached.getIndexFile()));
+    }
+
+    @Test
+    void testSeek() throws Exception {
+        FLACDecoder decoder = new FLACDecoder(Files.newInputStream(Paths.get(flac)));
+        decoder.readMetadata();
+        int[] expected = new int[(int) decoder.getStreamInfo().getTotalSamples()];
+        Frame frame;
+        while ((frame = decoder.readNextFrame()) != null) {
+            System.arraycopy(decoder.getChannelData()[0].getOutput(), 0, expected, (int) frame.header.sampleNumber, frame.header.blockSize);
+        }
+
+        decoder = new FLACDecoder(new MappedFileSource(Paths.get(flac)));
+        decoder.readMetadata();
+        FrameIndex index = new FrameIndex(new FrameScanner(decoder).scan());
+        decoder.setFrameIndex(index);
+        for (long target : new long[] {440999, 0, 4607, 4608, 100_000, 12345, 300_001}) {
+            SeekPoint point = decoder.seek(target);
+            assertNotNull(point);
+            assertEquals(index.getOffset(index.find(target)), point.getStreamOffset());
+            assertEquals(target, point.getSampleNumber() + point.getFrameSamples());
+            assertEquals(expected[(int) target], decoder.getChannelData()[0].getOutput()[point.getFrameSamples()]);
+        }
+    }
+}
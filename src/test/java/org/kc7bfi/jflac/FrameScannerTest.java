@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.kc7bfi.jflac;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.kc7bfi.jflac.frame.Frame;
+import org.kc7bfi.jflac.io.MappedFileSource;
+import org.kc7bfi.jflac.metadata.SeekPoint;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/**
+ * FrameScannerTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ */
+class FrameScannerTest {
+
+    String flac = "src/test/resources/test.flac";
+
+    @Test
+    void testScan() throws Exception {
+        List<String> expected = new ArrayList<>();
+        FLACDecoder decoder = new FLACDecoder(Files.newInputStream(Paths.get(flac)));
+        decoder.readMetadata();
+        Frame frame;
+        while ((frame = decoder.readNextFrame()) != null) {
+            long end = decoder.getBitInputStream().getPosition();
+            expected.add(frame.header.sampleNumber + " " + frame.header.blockSize + " " + end);
+        }
+
+        for (boolean mapped : new boolean[] {false, true}) {
+            decoder = mapped ? new FLACDecoder(new MappedFileSource(Paths.get(flac))) : new FLACDecoder(Files.newInputStream(Paths.get(flac)));
+            decoder.readMetadata();
+            FrameScanner scanner = new FrameScanner(decoder);
+            List<SeekPoint> frames = scanner.scan();
+            assertNull(scanner.nextFrame());
+
+            assertEquals(expected.size(), frames.size());
+            long length = Files.size(Paths.get(flac));
+            for (int i = 0; i < frames.size(); i++) {
+                SeekPoint point = frames.get(i);
+                // a frame ends where the next one starts
+                long end = i + 1 < frames.size() ? frames.get(i + 1).getStreamOffset() : length;
+                assertEquals(expected.get(i), point.getSampleNumber() + " " + point.getFrameSamples() + " " + end);
+            }
+        }
+    }
+}
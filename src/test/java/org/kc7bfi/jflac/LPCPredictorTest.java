@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.kc7bfi.jflac;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+
+/**
+ * LPCPredictorTest.
+ * <p>
+ * The kernels unrolled by order must restore what the loop over the order does.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ */
+class LPCPredictorTest {
+
+    static final int BLOCK_SIZE = 1000;
+
+    /** the loop of the specification, in 32 bits */
+    static void restore(int[] residual, int dataLen, int[] qlpCoeff, int order, int lpQuantization, int[] data, int startAt) {
+        for (int i = 0; i < dataLen; i++) {
+            int sum = 0;
+            for (int j = 0; j < order; j++) {
+                sum += qlpCoeff[j] * data[startAt + i - j - 1];
+            }
+            data[startAt + i] = residual[i] + (sum >> lpQuantization);
+        }
+    }
+
+    /** the loop of the specification, in 64 bits */
+    static void restoreWide(int[] residual, int dataLen, int[] qlpCoeff, int order, int lpQuantization, int[] data, int startAt) {
+        for (int i = 0; i < dataLen; i++) {
+            long sum = 0;
+            for (int j = 0; j < order; j++) {
+                sum += (long) qlpCoeff[j] * data[startAt + i - j - 1];
+            }
+            data[startAt + i] = residual[i] + (int) (sum >> lpQuantization);
+        }
+    }
+
+    @Test
+    void testRestoreSignal() throws Exception {
+        Random random = new Random(1);
+        for (int round = 0; round < 20; round++) {
+            // the unrolled orders and a few taking the loop
+            for (int order = 1; order <= 32; order++) {
+                int precision = 1 + random.nextInt(15);
+                int shift = random.nextInt(16);
+                int[] qlpCoeff = new int[32];
+                for (int j = 0; j < order; j++) {
+                    qlpCoeff[j] = random.nextInt(1 << precision) - (1 << (precision - 1));
+                }
+                int[] residual = new int[BLOCK_SIZE - order];
+                for (int i = 0; i < residual.length; i++) {
+                    residual[i] = random.nextInt(1 << 16) - (1 << 15);
+                }
+                int[] warmup = new int[BLOCK_SIZE];
+                for (int i = 0; i < order; i++) {
+                    warmup[i] = random.nextInt(1 << 16) - (1 << 15);
+                }
+                String message = "order " + order + " precision " + precision + " shift " + shift;
+
+                int[] expected = Arrays.copyOf(warmup, BLOCK_SIZE);
+                restore(residual, residual.length, qlpCoeff, order, shift, expected, order);
+                int[] actual = Arrays.copyOf(warmup, BLOCK_SIZE);
+                LPCPredictor.restoreSignal(residual, residual.length, qlpCoeff, order, shift, actual, order);
+                assertArrayEquals(expected, actual, message);
+
+                expected = Arrays.copyOf(warmup, BLOCK_SIZE);
+                restoreWide(residual, residual.length, qlpCoeff, order, shift, expected, order);
+                actual = Arrays.copyOf(warmup, BLOCK_SIZE);
+                LPCPredictor.restoreSignalWide(residual, residual.length, qlpCoeff, order, shift, actual, order);
+                assertArrayEquals(expected, actual, message);
+            }
+        }
+    }
+}
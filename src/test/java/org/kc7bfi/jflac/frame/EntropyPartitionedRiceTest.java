@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.kc7bfi.jflac.frame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.kc7bfi.jflac.io.BitInputStream;
+import org.kc7bfi.jflac.io.ByteBufferSource;
+import org.kc7bfi.jflac.io.InputStreamSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+
+/**
+ * EntropyPartitionedRiceTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ */
+class EntropyPartitionedRiceTest {
+
+    /** writes bits msb first */
+    static class BitWriter {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int bits;
+        int acc;
+
+        void write(long val, int n) {
+            for (int i = n - 1; i >= 0; i--) {
+                acc = (acc << 1) | (int) ((val >>> i) & 1);
+                if (++bits == 8) {
+                    bytes.write(acc);
+                    bits = 0;
+                    acc = 0;
+                }
+            }
+        }
+
+        void writeRice(int val, int parameter) {
+            int uval = (val << 1) ^ (val >> 31);
+            for (int zeros = uval >>> parameter; zeros > 0; zeros -= Math.min(zeros, 64)) {
+                write(0, Math.min(zeros, 64));
+            }
+            write(1, 1);
+            write(uval, parameter);
+        }
+
+        /** pads the last byte and some more, like the crc after a frame */
+        byte[] toByteArray() {
+            write(0, 8 - bits + 64);
+            return bytes.toByteArray();
+        }
+    }
+
+    static BitInputStream[] streams(byte[] data) {
+        return new BitInputStream[] {
+            new BitInputStream(new InputStreamSource(new ByteArrayInputStream(data), 16)),
+            new BitInputStream(new ByteBufferSource(data))
+        };
+    }
+
+    /** mostly values the parameter fits, some far larger with a long unary part */
+    static int[] residuals(Random random, int count, int parameter) {
+        int[] vals = new int[count];
+        for (int i = 0; i < count; i++) {
+            int range = random.nextInt(10) == 0 ? 1 << Math.min(parameter + 8, 30) : 1 << parameter;
+            vals[i] = random.nextInt(range) - range / 2;
+        }
+        return vals;
+    }
+
+    @Test
+    void testRiceSignedBlock() throws Exception {
+        Random random = new Random(1);
+        for (int parameter : new int[] {0, 1, 2, 3, 4, 7, 10, 14, 20, 29}) {
+            int[] expected = residuals(random, 5000, parameter);
+            // runs of zeros longer than the 64 bit cache
+            expected[100] = 300;
+            expected[101] = -300;
+            expected[4999] = (200 << Math.min(parameter, 20)) >> 1;
+            BitWriter writer = new BitWriter();
+            int offset = random.nextInt(64);
+            writer.write(0, offset);
+            for (int val : expected) {
+                writer.writeRice(val, parameter);
+            }
+            byte[] data = writer.toByteArray();
+
+            for (BitInputStream is : streams(data)) {
+                is.readRawULong(offset);
+                int[] actual = new int[expected.length + 2];
+                // in blocks of random sizes, each starting in another cache state
+                int pos = 1;
+                while (pos < expected.length + 1) {
+                    int n = Math.min(expected.length + 1 - pos, 1 + random.nextInt(300));
+                    is.readRiceSignedBlock(actual, pos, n, parameter);
+                    pos += n;
+                }
+                assertArrayEquals(expected, Arrays.copyOfRange(actual, 1, expected.length + 1));
+            }
+        }
+    }
+
+    /**
+     * @param parameterBits the bits of a rice parameter, 4 or 5
+     * @param escapes       the partitions of raw values
+     */
+    static byte[] residual(int[] expected, int predictorOrder, int partitionOrder, int parameterBits, boolean[] escapes, Random random) {
+        BitWriter writer = new BitWriter();
+        int partitions = 1 << partitionOrder;
+        int partitionSamples = (expected.length + predictorOrder) >> partitionOrder;
+        int sample = 0;
+        for (int partition = 0; partition < partitions; partition++) {
+            int u = partition == 0 ? partitionSamples - predictorOrder : partitionSamples;
+            if (escapes[partition]) {
+                // 0 raw bits are all zero
+                int rawBits = partition == 1 ? 0 : 1 + random.nextInt(31);
+                writer.write((1 << parameterBits) - 1, parameterBits);
+                writer.write(rawBits, 5);
+                for (int i = 0; i < u; i++, sample++) {
+                    expected[sample] = rawBits == 0 ? 0 : random.nextInt() >> (32 - rawBits);
+                    writer.write(expected[sample], rawBits);
+                }
+            } else {
+                int parameter = random.nextInt(parameterBits == 4 ? 15 : 24);
+                writer.write(parameter, parameterBits);
+                int[] vals = residuals(random, u, parameter);
+                for (int i = 0; i < u; i++, sample++) {
+                    expected[sample] = vals[i];
+                    writer.writeRice(vals[i], parameter);
+                }
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    @Test
+    void testEscapePartitions() throws Exception {
+        Random random = new Random(2);
+        int blockSize = 4096;
+        int predictorOrder = 8;
+        int partitionOrder = 3;
+        boolean[] escapes = {false, true, false, true, true, false, false, true};
+        Header header = new Header();
+        header.blockSize = blockSize;
+
+        for (EntropyCodingMethod method : new EntropyCodingMethod[] {new EntropyPartitionedRice(), new EntropyPartitionedRice2()}) {
+            int parameterBits = method instanceof EntropyPartitionedRice2 ? 5 : 4;
+            int[] expected = new int[blockSize - predictorOrder];
+            byte[] data = residual(expected, predictorOrder, partitionOrder, parameterBits, escapes, random);
+
+            for (BitInputStream is : streams(data)) {
+                method.contents = new EntropyPartitionedRiceContents();
+                int[] actual = new int[blockSize];
+                method.readResidual(is, predictorOrder, partitionOrder, header, actual);
+                assertArrayEquals(expected, Arrays.copyOf(actual, expected.length));
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.kc7bfi.jflac.io;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * BitInputStreamTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ */
+class BitInputStreamTest {
+
+    /** reads the bits one by one */
+    static class Reference {
+        final byte[] data;
+        long bit;
+
+        Reference(byte[] data) {
+            this.data = data;
+        }
+
+        long read(int bits) {
+            long val = 0;
+            for (int i = 0; i < bits; i++, bit++) {
+                val = (val << 1) | ((data[(int) (bit >>> 3)] >> (7 - (bit & 7))) & 1);
+            }
+            return val;
+        }
+
+        /** the first byte not completely read */
+        long position() {
+            return bit >>> 3;
+        }
+    }
+
+    /** an input stream returning a few bytes at a time */
+    static class Trickle extends ByteArrayInputStream {
+        Trickle(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 3));
+        }
+    }
+
+    static byte[] data(long seed) {
+        byte[] data = new byte[8192];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /** sources with buffers small enough to be refilled in the middle of the cache */
+    static List<ByteSource> sources(byte[] data, Path file) throws Exception {
+        List<ByteSource> sources = new ArrayList<>();
+        sources.add(new InputStreamSource(new ByteArrayInputStream(data), 16));
+        sources.add(new InputStreamSource(new Trickle(data), 16));
+        sources.add(new InputStreamSource(new RandomFileInputStream(file.toFile()), 17));
+        sources.add(new ChannelSource(Files.newByteChannel(file), 19));
+        sources.add(new ByteBufferSource(data));
+        return sources;
+    }
+
+    /** reads the widths and the kinds of reads at random */
+    static void read(BitInputStream bis, Reference reference, Random random) throws Exception {
+        int bits;
+        switch (random.nextInt(4)) {
+        case 0 -> {
+            bits = 1 + random.nextInt(32);
+            assertEquals((int) reference.read(bits), bis.readRawUInt(bits), "uint " + bits);
+        }
+        case 1 -> {
+            bits = 1 + random.nextInt(32);
+            long val = reference.read(bits);
+            assertEquals((int) (val << (64 - bits) >> (64 - bits)), bis.readRawInt(bits), "int " + bits);
+        }
+        case 2 -> {
+            bits = 1 + random.nextInt(57);
+            assertEquals(reference.read(bits), bis.readRawULong(bits), "ulong " + bits);
+        }
+        default -> {
+            bits = 58 + random.nextInt(7);
+            assertEquals(reference.read(bits), bis.readRawULong(bits), "ulong " + bits);
+        }
+        }
+    }
+
+    @Test
+    void testRawReads() throws Exception {
+        byte[] data = data(1);
+        Path file = Files.createTempFile("bits", ".bin");
+        try {
+            Files.write(file, data);
+            for (ByteSource source : sources(data, file)) {
+                try (source) {
+                    BitInputStream bis = new BitInputStream(source);
+                    Reference reference = new Reference(data);
+                    Random random = new Random(2);
+                    while (reference.bit < (data.length - 16) * 8L) {
+                        read(bis, reference, random);
+                        assertEquals(reference.position(), bis.getPosition(), source.getClass().getName());
+                    }
+                    assertEquals((int) ((reference.bit + 7) >>> 3), bis.getTotalBytesRead());
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testEveryWidth() throws Exception {
+        byte[] data = data(3);
+        for (int offset = 0; offset < 8; offset++) {
+            BitInputStream bis = new BitInputStream(new InputStreamSource(new Trickle(data), 16));
+            Reference reference = new Reference(data);
+            assertEquals(reference.read(offset), bis.readRawULong(offset));
+            for (int bits = 1; bits <= 57; bits++) {
+                assertEquals(reference.read(bits), bis.readRawULong(bits), "ulong " + bits);
+                if (bits <= 32) {
+                    assertEquals((int) reference.read(bits), bis.readRawUInt(bits), "uint " + bits);
+                    long val = reference.read(bits);
+                    assertEquals((int) (val << (64 - bits) >> (64 - bits)), bis.readRawInt(bits), "int " + bits);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testSkip() throws Exception {
+        byte[] data = data(4);
+        Path file = Files.createTempFile("bits", ".bin");
+        try {
+            Files.write(file, data);
+            for (ByteSource source : sources(data, file)) {
+                try (source) {
+                    BitInputStream bis = new BitInputStream(source);
+                    Reference reference = new Reference(data);
+                    Random random = new Random(5);
+                    while (reference.bit < (data.length - 200) * 8L) {
+                        if (random.nextInt(4) == 0) {
+                            // a partly read byte is the first one skipped
+                            int skip = random.nextInt(100);
+                            bis.skip(skip);
+                            if (skip > 0) reference.bit = (reference.position() + skip) * 8;
+                        } else {
+                            read(bis, reference, random);
+                        }
+                        assertEquals(reference.position(), bis.getPosition(), source.getClass().getName());
+                    }
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testReset() throws Exception {
+        byte[] data = data(6);
+        ByteSource source = new InputStreamSource(new ByteArrayInputStream(data), 64);
+        BitInputStream bis = new BitInputStream(source);
+        Reference reference = new Reference(data);
+        Random random = new Random(7);
+        while (reference.bit < (data.length - 200) * 8L) {
+            for (int i = random.nextInt(20); i > 0; i--) {
+                read(bis, reference, random);
+            }
+            // the bytes read from the source and not consumed are dropped
+            bis.reset();
+            assertEquals(source.getPosition(), bis.getPosition());
+            assertEquals(0, bis.getInputBytesUnconsumed());
+            reference.bit = source.getPosition() * 8;
+        }
+    }
+}
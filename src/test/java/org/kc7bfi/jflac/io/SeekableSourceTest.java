@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.kc7bfi.jflac.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.kc7bfi.jflac.FLACDecoder;
+import org.kc7bfi.jflac.FrameDecodeException;
+import org.kc7bfi.jflac.frame.Frame;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/**
+ * SeekableSourceTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ */
+class SeekableSourceTest {
+
+    Path flac = Paths.get("src/test/resources/test.flac");
+
+    List<SeekableSource> sources() throws Exception {
+        List<SeekableSource> sources = new ArrayList<>();
+        sources.add(new ChannelSource(new RandomAccessFile(flac.toFile(), "r")));
+        sources.add(new ChannelSource(Files.newByteChannel(flac), 100));
+        sources.add(new ByteBufferSource(Files.readAllBytes(flac)));
+        sources.add(new MappedFileSource(flac));
+        return sources;
+    }
+
+    @Test
+    void testSeekTo() throws Exception {
+        FLACDecoder decoder = new FLACDecoder(Files.newInputStream(flac));
+        decoder.readMetadata();
+        int total = (int) decoder.getStreamInfo().getTotalSamples();
+        int[] expected = new int[total];
+        Frame frame;
+        while ((frame = decoder.readNextFrame()) != null) {
+            System.arraycopy(decoder.getChannelData()[1].getOutput(), 0, expected, (int) frame.header.sampleNumber, frame.header.blockSize);
+        }
+
+        for (SeekableSource source : sources()) {
+            try (source) {
+                assertEquals(Files.size(flac), source.getLength());
+                decoder = new FLACDecoder(source);
+                decoder.readMetadata();
+                // forward and backward
+                for (long target : new long[] {300_000, 4608, 440_999, 0, 200_000, 199_999, 4607}) {
+                    frame = decoder.seekToFrame(target);
+                    assertNotNull(frame, source + " " + target);
+                    int skip = (int) (target - frame.header.sampleNumber);
+                    assertEquals(frame.header.sampleNumber, decoder.getSamplesDecoded());
+                    assertEquals(expected[(int) target], decoder.getChannelData()[1].getOutput()[skip]);
+                    // decoding goes on from the frame after
+                    frame = decoder.readNextFrame();
+                    if (frame != null) {
+                        assertEquals(expected[(int) frame.header.sampleNumber], decoder.getChannelData()[1].getOutput()[0]);
+                    }
+                }
+                assertNull(decoder.seekToFrame(total));
+            }
+        }
+    }
+
+    @Test
+    void testSeekDecodesOneFrame() throws Exception {
+        int[] frames = new int[1];
+        for (SeekableSource source : sources()) {
+            try (source) {
+                FLACDecoder decoder = new FLACDecoder(source) {
+                    @Override
+                    public Frame readFrame() throws IOException, FrameDecodeException {
+                        frames[0]++;
+                        return super.readFrame();
+                    }
+                };
+                decoder.readMetadata();
+                for (long target : new long[] {300_000, 4608, 440_999, 0, 200_000, 199_999}) {
+                    frames[0] = 0;
+                    Frame frame = decoder.seekToFrame(target);
+                    assertNotNull(frame, source + " " + target);
+                    assertEquals(target / 4608 * 4608, frame.header.sampleNumber);
+                    // the frames probed by the search are not decoded
+                    assertEquals(1, frames[0], source + " " + target);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testReadAt() throws Exception {
+        byte[] data = Files.readAllBytes(flac);
+        for (SeekableSource source : sources()) {
+            try (source) {
+                BitInputStream bis = new BitInputStream(source);
+                bis.readRawUInt(32);
+                long position = source.getPosition();
+                for (int start : new int[] {0, 4, 100_000, data.length - 10, data.length}) {
+                    ByteBuffer bytes = source.readAt(start, 1000);
+                    byte[] actual = new byte[bytes.remaining()];
+                    bytes.get(actual);
+                    assertArrayEquals(Arrays.copyOfRange(data, start, Math.min(start + 1000, data.length)), actual, source + " " + start);
+                }
+                // the bits go on where they were
+                assertEquals(position, source.getPosition());
+                assertEquals(((data[4] & 0xff) << 8) | (data[5] & 0xff), bis.readRawUInt(16));
+            }
+        }
+    }
+
+    @Test
+    void testSeekToForwardOnly() throws Exception {
+        FLACDecoder decoder = new FLACDecoder(Files.newInputStream(flac));
+        decoder.readMetadata();
+        frame(decoder.seekToFrame(100_000), 100_000);
+        frame(decoder.seekToFrame(110_000), 110_000);
+        frame(decoder.seekToFrame(200_000), 200_000);
+        decoder.seekTo(300_000);
+        assertEquals(300_000 / 4608 * 4608, decoder.getSamplesDecoded());
+        assertNull(decoder.seekToFrame(100_000));
+    }
+
+    static void frame(Frame frame, long target) {
+        assertNotNull(frame);
+        assertEquals(target / 4608 * 4608, frame.header.sampleNumber);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.kc7bfi.jflac.metadata;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/**
+ * SeekTableTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ */
+class SeekTableTest {
+
+    static final long PLACEHOLDER = 0xffff_ffff_ffff_ffffL;
+
+    @Test
+    void testFindSeekPoint() {
+        SeekTable table = new SeekTable(new SeekPoint[] {
+            new SeekPoint(0, 0, 4096),
+            new SeekPoint(40960, 1000, 4096),
+            new SeekPoint(40960, 1000, 4096),
+            new SeekPoint(81920, 2000, 4096),
+            new SeekPoint(PLACEHOLDER, 0, 0),
+            new SeekPoint(PLACEHOLDER, 0, 0),
+        }, true);
+
+        assertEquals(6, table.numberOfPoints());
+        assertEquals(0, table.findSeekPoint(0));
+        assertEquals(0, table.findSeekPoint(40959));
+        assertEquals(2, table.findSeekPoint(40960));
+        assertEquals(2, table.findSeekPoint(81919));
+        assertEquals(3, table.findSeekPoint(81920));
+        assertEquals(3, table.findSeekPoint(Long.MAX_VALUE));
+        assertEquals(2000, table.getStreamOffset(3));
+        assertEquals(4096, table.getFrameSamples(3));
+
+        assertEquals(0, table.seekSeekPoint(100).getSampleNumber());
+        assertEquals(40960, table.seekSeekPoint(50000).getSampleNumber());
+        assertNull(table.seekSeekPoint(90000));
+
+        SeekTable late = new SeekTable(new SeekPoint[] {new SeekPoint(4096, 100, 4096)}, true);
+        assertEquals(-1, late.findSeekPoint(0));
+        assertEquals(4096, late.seekSeekPoint(0).getSampleNumber());
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.kc7bfi.jflac.sound.spi;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.junit.jupiter.api.Test;
+import org.kc7bfi.jflac.FLACDecoder;
+import org.kc7bfi.jflac.frame.Frame;
+import org.kc7bfi.jflac.io.RandomFileInputStream;
+import org.kc7bfi.jflac.util.ByteData;
+import org.kc7bfi.jflac.util.CRC16;
+import org.kc7bfi.jflac.util.CRC8;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Flac2PcmAudioInputStreamTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ */
+class Flac2PcmAudioInputStreamTest {
+
+    Path flac = Paths.get("src/test/resources/test.flac");
+
+    AudioFormat pcm = new AudioFormat(44100, 16, 2, true, false);
+
+    byte[] expected() throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        FLACDecoder decoder = new FLACDecoder(Files.newInputStream(flac));
+        decoder.readMetadata();
+        Frame frame;
+        while ((frame = decoder.readNextFrame()) != null) {
+            ByteData data = decoder.decodeFrame(frame, null);
+            expected.write(data.getData(), 0, data.getLen());
+        }
+        return expected.toByteArray();
+    }
+
+    /** reads some, skips, reads some more and skips past the end */
+    void testSkip(AudioInputStream ais) throws Exception {
+        byte[] expected = expected();
+        try (ais) {
+            byte[] head = ais.readNBytes(1000);
+            assertArrayEquals(Arrays.copyOf(expected, 1000), head);
+            // within the buffer
+            assertEquals(8, ais.skip(10));
+            // a few frames ahead, in the middle of a frame
+            assertEquals(400_000, ais.skip(400_000));
+            byte[] middle = ais.readNBytes(100_000);
+            assertArrayEquals(Arrays.copyOfRange(expected, 401_008, 501_008), middle);
+            assertEquals(expected.length - 501_008, ais.skip(Long.MAX_VALUE / 2));
+            assertEquals(-1, ais.read(new byte[4]));
+        }
+    }
+
+    @Test
+    void testSkipSeekable() throws Exception {
+        testSkip(new Flac2PcmAudioInputStream(new RandomFileInputStream(flac.toFile()), pcm, -1));
+    }
+
+    @Test
+    void testSkipNotSeekable() throws Exception {
+        testSkip(new Flac2PcmAudioInputStream(new BufferedInputStream(Files.newInputStream(flac)), pcm, -1));
+    }
+
+    @Test
+    void testSkipAudioSystem() throws Exception {
+        AudioInputStream ais = AudioSystem.getAudioInputStream(flac.toFile());
+        testSkip(AudioSystem.getAudioInputStream(pcm, ais));
+    }
+
+    @Test
+    void testMarkReset() throws Exception {
+        byte[] expected = expected();
+        try (AudioInputStream ais = AudioSystem.getAudioInputStream(pcm, AudioSystem.getAudioInputStream(flac.toFile()))) {
+            assertTrue(ais.markSupported());
+            ais.mark(0);
+            byte[] first = ais.readNBytes(20_000);
+            ais.reset();
+            assertArrayEquals(first, ais.readNBytes(20_000));
+            assertArrayEquals(Arrays.copyOf(expected, 20_000), first);
+
+            // in the middle of a frame, again and again
+            ais.skip(100_000);
+            ais.mark(0);
+            for (int i = 0; i < 3; i++) {
+                assertArrayEquals(Arrays.copyOfRange(expected, 120_000, 170_000), ais.readNBytes(50_000));
+                ais.reset();
+            }
+
+            // up to the end
+            ais.skip(expected.length - 120_000 - 100);
+            ais.mark(0);
+            assertArrayEquals(Arrays.copyOfRange(expected, expected.length - 100, expected.length), ais.readNBytes(1000));
+            assertEquals(-1, ais.read(new byte[4]));
+            ais.reset();
+            assertArrayEquals(Arrays.copyOfRange(expected, expected.length - 100, expected.length), ais.readNBytes(1000));
+        }
+    }
+
+    @Test
+    void testMarkNotSupported() throws Exception {
+        try (AudioInputStream ais = new Flac2PcmAudioInputStream(new BufferedInputStream(Files.newInputStream(flac)), pcm, -1)) {
+            assertFalse(ais.markSupported());
+            ais.mark(0);
+            assertThrows(IOException.class, ais::reset);
+        }
+    }
+
+    /** a stream decoding 200 ms ahead, counting the threads decoding */
+    Flac2PcmAudioInputStream decodingAhead(InputStream in, AtomicInteger threads) {
+        Flac2PcmAudioInputStream ais = new Flac2PcmAudioInputStream(in, pcm, -1);
+        ais.setDecodeAhead(200, r -> {
+            threads.incrementAndGet();
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            return thread;
+        });
+        return ais;
+    }
+
+    @Test
+    void testDecodeAhead() throws Exception {
+        AtomicInteger threads = new AtomicInteger();
+        try (AudioInputStream ais = decodingAhead(new BufferedInputStream(Files.newInputStream(flac)), threads)) {
+            byte[] actual = new byte[expected().length];
+            int n = 0;
+            for (int l; (l = ais.read(actual, n, Math.min(actual.length - n, 4096))) > 0; ) {
+                n += l;
+            }
+            assertEquals(actual.length, n);
+            assertArrayEquals(expected(), actual);
+            assertEquals(-1, ais.read(new byte[4]));
+        }
+        assertEquals(1, threads.get());
+    }
+
+    @Test
+    void testDecodeAheadAvailable() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch decode = new CountDownLatch(1);
+        Flac2PcmAudioInputStream ais = new Flac2PcmAudioInputStream(new BufferedInputStream(Files.newInputStream(flac)), pcm, -1);
+        // a thread decoding only when let
+        ais.setDecodeAhead(200, r -> {
+            Thread thread = new Thread(() -> {
+                started.countDown();
+                try {
+                    decode.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                r.run();
+            });
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (ais) {
+            // starts the thread and does not wait for it
+            FutureTask<Integer> available = new FutureTask<>(ais::available);
+            new Thread(available).start();
+            try {
+                assertEquals(0, (int) available.get(10, TimeUnit.SECONDS));
+                assertTrue(started.await(10, TimeUnit.SECONDS));
+            } finally {
+                decode.countDown();
+            }
+            assertArrayEquals(expected(), ais.readAllBytes());
+            assertEquals(0, ais.available());
+        }
+    }
+
+    @Test
+    void testDecodeAheadSkip() throws Exception {
+        AtomicInteger threads = new AtomicInteger();
+        testSkip(decodingAhead(new RandomFileInputStream(flac.toFile()), threads));
+        testSkip(decodingAhead(new BufferedInputStream(Files.newInputStream(flac)), threads));
+        assertTrue(threads.get() > 0);
+    }
+
+    @Test
+    void testDecodeAheadMarkReset() throws Exception {
+        byte[] expected = expected();
+        AtomicInteger threads = new AtomicInteger();
+        try (AudioInputStream ais = decodingAhead(new RandomFileInputStream(flac.toFile()), threads)) {
+            ais.readNBytes(10_000);
+            // the frames decoded ahead are past the mark
+            ais.mark(0);
+            for (int i = 0; i < 2; i++) {
+                assertArrayEquals(Arrays.copyOfRange(expected, 10_000, 310_000), ais.readNBytes(300_000));
+                ais.reset();
+            }
+            assertArrayEquals(Arrays.copyOfRange(expected, 10_000, expected.length), ais.readAllBytes());
+        }
+        assertTrue(threads.get() > 1);
+    }
+
+    @Test
+    void testBufferSize() throws Exception {
+        try (Flac2PcmAudioInputStream ais = new Flac2PcmAudioInputStream(new RandomFileInputStream(flac.toFile()), pcm, -1)) {
+            ais.read(new byte[4]);
+            // a frame of 4608 samples of 4 bytes, the rest of it waits beside the buffer
+            assertEquals(16384, ais.buffer.size());
+            assertArrayEquals(Arrays.copyOfRange(expected(), 4, 100_004), ais.readNBytes(100_000));
+        }
+        try (Flac2PcmAudioInputStream ais = new Flac2PcmAudioInputStream(new RandomFileInputStream(flac.toFile()), pcm, -1)) {
+            ais.setMaxBufferSize(20000);
+            ais.read(new byte[4]);
+            assertEquals(16384, ais.buffer.size());
+        }
+        // less than the default buffer of the super class
+        try (Flac2PcmAudioInputStream ais = new Flac2PcmAudioInputStream(new RandomFileInputStream(flac.toFile()), pcm, -1)) {
+            ais.setMaxBufferSize(1000);
+            assertArrayEquals(Arrays.copyOf(expected(), 100_000), ais.readNBytes(100_000));
+            assertEquals(512, ais.buffer.size());
+            // never shrunk
+            assertThrows(IllegalArgumentException.class, () -> ais.setMaxBufferSize(256));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new Flac2PcmAudioInputStream(new RandomFileInputStream(flac.toFile()), pcm, -1).setMaxBufferSize(4));
+    }
+
+    /** the 16 bit little endian samples of test.flac packed to the format */
+    byte[] expected(AudioFormat format) throws Exception {
+        byte[] expected = expected();
+        int bytes = format.getSampleSizeInBits() / 8;
+        boolean isFloat = format.getEncoding().equals(AudioFormat.Encoding.PCM_FLOAT);
+        byte[] converted = new byte[expected.length / 2 * bytes];
+        for (int i = 0; i < expected.length / 2; i++) {
+            int sample = (expected[i * 2] & 0xff) | (expected[i * 2 + 1] << 8);
+            int value = isFloat ? Float.floatToRawIntBits(sample / 32768f) : bytes > 2 ? sample << (bytes * 8 - 16) : sample >> (16 - bytes * 8);
+            for (int b = 0; b < bytes; b++) {
+                converted[i * bytes + (format.isBigEndian() ? bytes - 1 - b : b)] = (byte) (value >> (b * 8));
+            }
+        }
+        return converted;
+    }
+
+    /**
+     * A FLAC stream of 8 bit stereo at 44100 Hz, frames of 1024 samples with
+     * verbatim subframes.
+     *
+     * @param samples the signed samples, interleaved, a multiple of 2048
+     */
+    static byte[] flac8(byte[] samples) throws Exception {
+        int blockSize = 1024;
+        int frames = samples.length / 2 / blockSize;
+        int frameBytes = 6 + 2 * (1 + blockSize) + 2;
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        out.writeBytes("fLaC");
+        // the last metadata block, a StreamInfo of 34 bytes
+        out.writeInt(0x80 << 24 | 34);
+        out.writeShort(blockSize);
+        out.writeShort(blockSize);
+        out.writeShort(frameBytes >> 8);
+        out.writeByte(frameBytes);
+        out.writeShort(frameBytes >> 8);
+        out.writeByte(frameBytes);
+        out.writeLong(44100L << 44 | 1L << 41 | 7L << 36 | (long) frames * blockSize);
+        out.write(new byte[16]);
+        for (int f = 0; f < frames; f++) {
+            byte[] frame = new byte[frameBytes];
+            // sync, 1024 samples, 44100 Hz, left and right, 8 bits, the frame number
+            frame[0] = (byte) 0xff;
+            frame[1] = (byte) 0xf8;
+            frame[2] = (byte) 0xa9;
+            frame[3] = (byte) 0x12;
+            frame[4] = (byte) f;
+            frame[5] = CRC8.calc(frame, 5);
+            for (int channel = 0; channel < 2; channel++) {
+                int subframe = 6 + channel * (1 + blockSize);
+                frame[subframe] = 0x02;
+                for (int i = 0; i < blockSize; i++) {
+                    frame[subframe + 1 + i] = samples[(f * blockSize + i) * 2 + channel];
+                }
+            }
+            short crc = CRC16.calc(frame, frameBytes - 2);
+            frame[frameBytes - 2] = (byte) (crc >> 8);
+            frame[frameBytes - 1] = (byte) crc;
+            out.write(frame);
+        }
+        return baos.toByteArray();
+    }
+
+    @Test
+    void testConvert() throws Exception {
+        AudioFormat flacFormat = AudioSystem.getAudioFileFormat(flac.toFile()).getFormat();
+        FlacFormatConversionProvider provider = new FlacFormatConversionProvider();
+        AudioFormat[] formats = provider.getTargetFormats(AudioFormat.Encoding.PCM_SIGNED, flacFormat);
+        assertEquals(8, formats.length);
+        assertTrue(pcm.matches(formats[0]));
+        assertEquals(2, provider.getTargetFormats(AudioFormat.Encoding.PCM_FLOAT, flacFormat).length);
+
+        for (AudioFormat format : new AudioFormat[] {
+                new AudioFormat(44100, 16, 2, true, true),
+                new AudioFormat(44100, 24, 2, true, false),
+                new AudioFormat(44100, 32, 2, true, true),
+                new AudioFormat(44100, 8, 2, true, false),
+                new AudioFormat(AudioFormat.Encoding.PCM_FLOAT, 44100, 32, 2, 8, 44100, false),
+                new AudioFormat(AudioFormat.Encoding.PCM_FLOAT, 44100, 32, 2, 8, 44100, true)}) {
+            assertTrue(AudioSystem.isConversionSupported(format, flacFormat), format.toString());
+            byte[] expected = expected(format);
+            try (AudioInputStream ais = AudioSystem.getAudioInputStream(format, AudioSystem.getAudioInputStream(flac.toFile()))) {
+                assertTrue(format.matches(ais.getFormat()));
+                assertArrayEquals(expected, ais.readAllBytes());
+            }
+            // seeking lands on the same bytes
+            try (AudioInputStream ais = provider.getAudioInputStream(format, new FlacAudioFileReader().getAudioInputStream(flac.toFile()))) {
+                int frameSize = format.getFrameSize();
+                assertEquals(1000L * frameSize, ais.skip(1000L * frameSize));
+                assertArrayEquals(Arrays.copyOfRange(expected, 1000 * frameSize, 101_000 * frameSize), ais.readNBytes(100_000 * frameSize));
+            }
+        }
+
+        // not resampled, the rates are the ones of the source or not specified
+        for (AudioFormat format : new AudioFormat[] {
+                new AudioFormat(48000, 16, 2, true, false),
+                new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 44100, 16, 2, 4, 22050, false)}) {
+            try (AudioInputStream source = new FlacAudioFileReader().getAudioInputStream(flac.toFile())) {
+                assertThrows(IllegalArgumentException.class, () -> provider.getAudioInputStream(format, source));
+            }
+        }
+        AudioFormat unspecified = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, AudioSystem.NOT_SPECIFIED, 16, 2, 4, AudioSystem.NOT_SPECIFIED, false);
+        try (AudioInputStream ais = provider.getAudioInputStream(unspecified, new FlacAudioFileReader().getAudioInputStream(flac.toFile()))) {
+            assertArrayEquals(expected(), ais.readAllBytes());
+        }
+
+        // an 8 bit source packed to signed 8 and 16 bits
+        byte[] samples = new byte[2048 * 10];
+        new Random(1).nextBytes(samples);
+        Path flac8 = Files.createTempFile("test8", ".flac");
+        try {
+            Files.write(flac8, flac8(samples));
+            byte[] expected16 = new byte[samples.length * 2];
+            for (int i = 0; i < samples.length; i++) {
+                expected16[i * 2 + 1] = samples[i];
+            }
+            AudioFormat signed8 = new AudioFormat(44100, 8, 2, true, false);
+            try (AudioInputStream ais = AudioSystem.getAudioInputStream(signed8, AudioSystem.getAudioInputStream(flac8.toFile()))) {
+                assertArrayEquals(samples, ais.readAllBytes());
+            }
+            try (AudioInputStream ais = AudioSystem.getAudioInputStream(pcm, AudioSystem.getAudioInputStream(flac8.toFile()))) {
+                assertArrayEquals(expected16, ais.readAllBytes());
+            }
+        } finally {
+            Files.delete(flac8);
+        }
+    }
+
+    @Test
+    void testDither() throws Exception {
+        AudioFormat format = new AudioFormat(44100, 8, 2, true, false);
+        byte[] expected = expected();
+        Flac2PcmAudioInputStream ais = new Flac2PcmAudioInputStream(new RandomFileInputStream(flac.toFile()), format, -1);
+        ais.setDither(true);
+        try (ais) {
+            byte[] actual = ais.readAllBytes();
+            assertEquals(expected.length / 2, actual.length);
+            int differ = 0;
+            for (int i = 0; i < actual.length; i++) {
+                int sample = (expected[i * 2] & 0xff) | (expected[i * 2 + 1] << 8);
+                // within a step of the rounded sample, and not always the truncated one
+                assertTrue(Math.abs(actual[i] * 256 - sample) < 512, String.valueOf(i));
+                if (actual[i] != sample >> 8) differ++;
+            }
+            assertTrue(differ > 0);
+        }
+    }
+
+    /** a stream with a buffer smaller than a frame */
+    Flac2PcmAudioInputStream small(InputStream in) {
+        Flac2PcmAudioInputStream ais = new Flac2PcmAudioInputStream(in, pcm, -1);
+        ais.setMaxBufferSize(3000);
+        return ais;
+    }
+
+    @Test
+    void testSmallBuffer() throws Exception {
+        byte[] expected = expected();
+        try (Flac2PcmAudioInputStream ais = small(new BufferedInputStream(Files.newInputStream(flac)))) {
+            assertArrayEquals(expected, ais.readAllBytes());
+            assertEquals(2048, ais.buffer.size());
+        }
+        testSkip(small(new RandomFileInputStream(flac.toFile())));
+        testSkip(small(new BufferedInputStream(Files.newInputStream(flac))));
+        try (Flac2PcmAudioInputStream ais = small(new RandomFileInputStream(flac.toFile()))) {
+            ais.readNBytes(10_000);
+            ais.mark(0);
+            assertArrayEquals(Arrays.copyOfRange(expected, 10_000, 60_000), ais.readNBytes(50_000));
+            ais.reset();
+            // a frame split between the buffer and the pcm waiting beside it
+            assertEquals(1000, ais.skip(1000));
+            assertArrayEquals(Arrays.copyOfRange(expected, 11_000, 60_000), ais.readNBytes(49_000));
+        }
+        AtomicInteger threads = new AtomicInteger();
+        try (Flac2PcmAudioInputStream ais = decodingAhead(new RandomFileInputStream(flac.toFile()), threads)) {
+            ais.setMaxBufferSize(3000);
+            assertArrayEquals(expected, ais.readAllBytes());
+            assertEquals(2048, ais.buffer.size());
+        }
+    }
+}
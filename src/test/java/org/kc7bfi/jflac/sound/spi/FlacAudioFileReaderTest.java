@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.kc7bfi.jflac.sound.spi;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.junit.jupiter.api.Test;
+import org.kc7bfi.jflac.FLACDecoder;
+import org.kc7bfi.jflac.metadata.StreamInfo;
+import org.kc7bfi.jflac.util.ByteData;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * FlacAudioFileReaderTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ */
+class FlacAudioFileReaderTest {
+
+    Path flac = Paths.get("src/test/resources/test.flac");
+
+    AudioFormat pcm = new AudioFormat(44100, 16, 2, true, false);
+
+    byte[] expected() throws Exception {
+        FLACDecoder decoder = new FLACDecoder(Files.newInputStream(flac));
+        decoder.readMetadata();
+        byte[] expected = new byte[(int) decoder.getStreamInfo().getTotalSamples() * 4];
+        int n = 0;
+        ByteData pcm = null;
+        for (var frame = decoder.readNextFrame(); frame != null; frame = decoder.readNextFrame()) {
+            pcm = decoder.decodeFrame(frame, pcm);
+            System.arraycopy(pcm.getData(), 0, expected, n, pcm.getLen());
+            n += pcm.getLen();
+        }
+        return expected;
+    }
+
+    /** the decoder of the reader goes on to the conversion */
+    void testConvert(AudioInputStream flacAis) throws Exception {
+        assertTrue(flacAis instanceof FlacAudioInputStream);
+        FlacAudioInputStream source = (FlacAudioInputStream) flacAis;
+        assertNotNull(source.getDecoder());
+        assertTrue(source.getMetadata()[0] instanceof StreamInfo);
+        assertEquals(44100f, flacAis.getFormat().getSampleRate());
+        try (Flac2PcmAudioInputStream ais = (Flac2PcmAudioInputStream) new FlacFormatConversionProvider().getAudioInputStream(pcm, flacAis)) {
+            assertArrayEquals(expected(), ais.readAllBytes());
+            assertTrue(ais.getMetaData()[0] instanceof StreamInfo);
+            assertEquals(441000, ais.getStreamInfo().getTotalSamples());
+        }
+    }
+
+    @Test
+    void testInputStream() throws Exception {
+        testConvert(new FlacAudioFileReader().getAudioInputStream(new BufferedInputStream(Files.newInputStream(flac))));
+    }
+
+    @Test
+    void testFile() throws Exception {
+        testConvert(new FlacAudioFileReader().getAudioInputStream(flac.toFile()));
+    }
+
+    @Test
+    void testReadFlacBytes() throws Exception {
+        try (AudioInputStream ais = new FlacAudioFileReader().getAudioInputStream(flac.toFile())) {
+            assertArrayEquals(Files.readAllBytes(flac), ais.readAllBytes());
+            assertNull(((FlacAudioInputStream) ais).getDecoder());
+        }
+        // reset to the start, the metadata read by the decoder is read again
+        try (AudioInputStream ais = new FlacAudioFileReader().getAudioInputStream(new BufferedInputStream(Files.newInputStream(flac)))) {
+            assertArrayEquals(Files.readAllBytes(flac), ais.readAllBytes());
+            assertNull(((FlacAudioInputStream) ais).getDecoder());
+        }
+        try (AudioInputStream ais = AudioSystem.getAudioInputStream(new BufferedInputStream(Files.newInputStream(flac)))) {
+            assertTrue(ais.available() > 0);
+            assertEquals(100, ais.skip(100));
+            byte[] bytes = Files.readAllBytes(flac);
+            assertArrayEquals(Arrays.copyOfRange(bytes, 100, bytes.length), ais.readAllBytes());
+        }
+        try (AudioInputStream ais = AudioSystem.getAudioInputStream(flac.toUri().toURL())) {
+            ByteArrayOutputStream copy = new ByteArrayOutputStream();
+            ais.transferTo(copy);
+            assertArrayEquals(Files.readAllBytes(flac), copy.toByteArray());
+        }
+    }
+
+    @Test
+    void testReadFlacBytesLargeMetadata() throws Exception {
+        // a padding block larger than the buffer of the stream after the StreamInfo
+        byte[] bytes = Files.readAllBytes(flac);
+        int padding = 100_000;
+        ByteArrayOutputStream padded = new ByteArrayOutputStream();
+        padded.write(bytes, 0, 4 + 4 + 34);
+        padded.write(new byte[] {1, (byte) (padding >> 16), (byte) (padding >> 8), (byte) padding});
+        padded.write(new byte[padding]);
+        padded.write(bytes, 4 + 4 + 34, bytes.length - (4 + 4 + 34));
+        byte[] expected = padded.toByteArray();
+        expected[4] &= 0x7f; // the StreamInfo is not the last block anymore
+
+        try (AudioInputStream ais = AudioSystem.getAudioInputStream(new BufferedInputStream(new ByteArrayInputStream(expected)))) {
+            assertEquals(44100, (int) ais.getFormat().getSampleRate());
+            assertArrayEquals(expected, ais.readAllBytes());
+        }
+    }
+
+    @Test
+    void testNotFlac() throws Exception {
+        byte[] data = new byte[4096];
+        Arrays.fill(data, (byte) 'x');
+        InputStream is = new ByteArrayInputStream(data);
+        assertThrows(UnsupportedAudioFileException.class, () -> new FlacAudioFileReader().getAudioInputStream(is));
+        // not consumed for the other readers
+        assertEquals(data.length, is.available());
+    }
+
+    @Test
+    void testFrameLength() throws Exception {
+        int bitrate = (int) (Files.size(flac) * 8 * 44100 / 441000);
+
+        AudioFileFormat format = new FlacAudioFileReader().getAudioFileFormat(flac.toFile());
+        assertEquals(441000, format.getFrameLength());
+        assertEquals(10_000_000L, format.getProperty("duration"));
+        assertEquals(bitrate, format.getProperty("bitrate"));
+        assertEquals(bitrate, format.getFormat().getProperty("bitrate"));
+        assertEquals(true, format.getFormat().getProperty("vbr"));
+
+        format = new FlacAudioFileReader().getAudioFileFormat(new BufferedInputStream(Files.newInputStream(flac)));
+        assertEquals(441000, format.getFrameLength());
+        assertEquals(10_000_000L, format.getProperty("duration"));
+        assertNull(format.getProperty("bitrate"));
+
+        try (AudioInputStream flacAis = new FlacAudioFileReader().getAudioInputStream(flac.toFile());
+             AudioInputStream pcmAis = AudioSystem.getAudioInputStream(pcm, flacAis)) {
+            assertEquals(441000, flacAis.getFrameLength());
+            assertEquals(bitrate, flacAis.getFormat().getProperty("bitrate"));
+            assertEquals(441000, pcmAis.getFrameLength());
+            assertEquals(441000 * 4, pcmAis.readAllBytes().length);
+        }
+    }
+}
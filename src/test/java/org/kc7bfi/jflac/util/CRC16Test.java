@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.kc7bfi.jflac.util;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * CRC16Test.
+ * <p>
+ * The block updates must give the CRC of updating a byte at a time.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ */
+class CRC16Test {
+
+    Random random = new Random(1234);
+
+    @Test
+    void testUpdateBlock() throws Exception {
+        byte[] data = new byte[128];
+        ByteBuffer heap = ByteBuffer.allocate(data.length);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        // a buffer with an array offset
+        ByteBuffer slice = ByteBuffer.allocate(data.length + 5).position(5).slice();
+        for (int round = 0; round < 200; round++) {
+            random.nextBytes(data);
+            heap.clear().put(data);
+            direct.clear().put(data);
+            slice.clear().put(data);
+            short seed = (short) random.nextInt();
+            for (int len = 0; len <= 64; len++) {
+                int off = random.nextInt(data.length - len + 1);
+                short expected = seed;
+                for (int i = off; i < off + len; i++) {
+                    expected = CRC16.update(data[i], expected);
+                }
+                String message = "off " + off + " len " + len;
+                assertEquals(expected, CRC16.updateBlock(data, off, len, seed), message);
+                assertEquals(expected, CRC16.updateBlock(heap, off, len, seed), message);
+                assertEquals(expected, CRC16.updateBlock(direct, off, len, seed), message);
+                assertEquals(expected, CRC16.updateBlock(slice, off, len, seed), message);
+                if (off == 0) {
+                    assertEquals(expected, CRC16.updateBlock(data, len, seed), message);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testCalc() throws Exception {
+        // the CRC-16 of FLAC, polynomial 0x8005, of "123456789"
+        assertEquals((short) 0xfee8, CRC16.calc("123456789".getBytes(), 9));
+    }
+}
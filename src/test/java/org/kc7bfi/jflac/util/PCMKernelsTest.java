@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.kc7bfi.jflac.util;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.kc7bfi.jflac.Constants;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * PCMKernelsTest.
+ * <p>
+ * The packing must undo the channel assignment, into arrays and buffers.
+ * The Vector API kernels are compared with these in VectorPCMKernelsTest,
+ * built with the vector profile.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ */
+class PCMKernelsTest {
+
+    PCMKernels scalar = new PCMKernels();
+
+    Random random = new Random(1234);
+
+    int[][] channels(int count, int samples) {
+        int[][] channels = new int[count][samples];
+        for (int[] channel : channels) {
+            for (int i = 0; i < samples; i++) channel[i] = random.nextInt();
+        }
+        return channels;
+    }
+
+    @Test
+    void testPackUndoesAssignment() {
+        for (int bytes = 1; bytes <= 3; bytes++) {
+            for (int assignment = 0; assignment < 4; assignment++) {
+                int samples = 100;
+                int[][] channels = channels(2, samples);
+                byte[] fused = new byte[samples * 2 * bytes];
+                pack(scalar, bytes, channels, 2, assignment, samples, fused, 0);
+
+                switch (assignment) {
+                    case Constants.CHANNEL_ASSIGNMENT_LEFT_SIDE -> scalar.undoLeftSide(channels[0], channels[1], samples);
+                    case Constants.CHANNEL_ASSIGNMENT_RIGHT_SIDE -> scalar.undoRightSide(channels[0], channels[1], samples);
+                    case Constants.CHANNEL_ASSIGNMENT_MID_SIDE -> scalar.undoMidSide(channels[0], channels[1], samples);
+                }
+                byte[] undone = new byte[fused.length];
+                pack(scalar, bytes, channels, 2, Constants.CHANNEL_ASSIGNMENT_INDEPENDENT, samples, undone, 0);
+                assertArrayEquals(undone, fused);
+            }
+        }
+    }
+
+    @Test
+    void testPackBuffer() {
+        for (int bytes = 1; bytes <= 3; bytes++) {
+            for (int count = 1; count <= 3; count++) {
+                for (int assignment = 0; assignment < (count == 2 ? 4 : 1); assignment++) {
+                    int samples = 100;
+                    int[][] channels = channels(count, samples);
+                    byte[] expected = new byte[samples * count * bytes];
+                    pack(scalar, bytes, channels, count, assignment, samples, expected, 0);
+
+                    ByteBuffer direct = ByteBuffer.allocateDirect(expected.length + 1);
+                    assertEquals(expected.length + 1, scalar.pack(channels, count, assignment, bytes, samples, direct, 1));
+                    byte[] actual = new byte[expected.length];
+                    direct.get(1, actual);
+                    assertArrayEquals(expected, actual);
+                }
+            }
+        }
+    }
+
+    static int pack(PCMKernels kernels, int bytes, int[][] channels, int count, int assignment, int samples, byte[] out, int offset) {
+        return switch (bytes) {
+            case 1 -> kernels.pack8(channels, count, assignment, samples, out, offset);
+            case 2 -> kernels.pack16(channels, count, assignment, samples, out, offset);
+            default -> kernels.pack24(channels, count, assignment, samples, out, offset);
+        };
+    }
+}
@@ -1,5 +1,8 @@
 package org.kc7bfi.jflac.util;
 
+import java.util.Arrays;
+import java.util.Random;
+
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -46,4 +49,78 @@ class RingBufferTest {
 //        System.out.println(new String(g));
 //        assertEquals("AB", new String(g));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testWrap() {
+        RingBuffer r = new RingBuffer(10);
+        assertEquals(16, r.size());
+        byte[] b = new byte[13];
+        for (int i = 0; i < b.length; i++) b[i] = (byte) i;
+        byte[] g = new byte[16];
+        r.put(b, 0, 13);
+        assertEquals(10, r.get(g, 0, 10));
+        // wraps in one put and one get
+        r.put(b, 0, 13);
+        assertEquals(0, r.putAvailable());
+        assertEquals(16, r.get(g, 0, 16));
+        assertArrayEquals(new byte[] {10, 11, 12, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12}, g);
+        assertEquals(0, r.getAvailable());
+    }
+
+    @Test
+    void testResizeKeepsWrappedData() {
+        RingBuffer r = new RingBuffer(8);
+        byte[] b = "ABCDEFGH".getBytes();
+        byte[] g = new byte[16];
+        r.put(b, 0, 6);
+        r.get(g, 0, 5);
+        r.put(b, 0, 6);
+        r.resize(12);
+        assertEquals(16, r.size());
+        r.put(b, 0, 8);
+        assertEquals(15, r.get(g, 0, 16));
+        assertEquals("FABCDEFABCDEFGH", new String(g, 0, 15));
+    }
+
+    @Test
+    void testSkipAndEmpty() {
+        RingBuffer r = new RingBuffer(8);
+        byte[] b = "ABCDEFGH".getBytes();
+        byte[] g = new byte[8];
+        r.put(b, 0, 8);
+        assertEquals(3, r.skip(3));
+        assertEquals(2, r.get(g, 0, 2));
+        assertEquals("DE", new String(g, 0, 2));
+        r.empty();
+        assertEquals(0, r.getAvailable());
+        r.setEOF(true);
+        assertEquals(-1, r.get(g, 0, 2));
+    }
+
+    @Test
+    void testProducerConsumer() throws Exception {
+        RingBuffer r = new RingBuffer(4096);
+        Random random = new Random(1);
+        byte[] data = new byte[8 * 1024 * 1024];
+        random.nextBytes(data);
+        Thread producer = new Thread(() -> {
+            Random sizes = new Random(2);
+            for (int i = 0; i < data.length; ) {
+                int l = Math.min(data.length - i, 1 + sizes.nextInt(10000));
+                r.put(data, i, l);
+                i += l;
+            }
+            r.setEOF(true);
+        });
+        producer.start();
+        // room for one more byte, to read the eof
+        byte[] got = new byte[data.length + 1];
+        int total = 0;
+        for (int l; (l = r.get(got, total, Math.min(got.length - total, 1 + random.nextInt(3000)))) != -1; ) {
+            total += l;
+        }
+        producer.join();
+        assertEquals(data.length, total);
+        assertArrayEquals(data, Arrays.copyOf(got, total));
+    }
+}
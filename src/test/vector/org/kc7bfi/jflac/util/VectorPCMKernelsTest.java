@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.kc7bfi.jflac.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * VectorPCMKernelsTest.
+ * <p>
+ * The Vector API kernels must give the same output as the scalar kernels.
+ * Sizes run from below to above a few vectors, so the vector loops and
+ * the scalar tails are both taken.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ */
+class VectorPCMKernelsTest {
+
+    PCMKernels scalar = new PCMKernels();
+    PCMKernels vector = new VectorPCMKernels();
+
+    Random random = new Random(1234);
+
+    int[][] channels(int count, int samples) {
+        int[][] channels = new int[count][samples];
+        for (int[] channel : channels) {
+            for (int i = 0; i < samples; i++) channel[i] = random.nextInt();
+        }
+        return channels;
+    }
+
+    int[][] copy(int[][] channels) {
+        return Arrays.stream(channels).map(int[]::clone).toArray(int[][]::new);
+    }
+
+    @Test
+    void testDecorrelation() {
+        for (int samples = 0; samples < 200; samples++) {
+            int[][] expected = channels(2, samples);
+            int[][] actual = copy(expected);
+            scalar.undoLeftSide(expected[0], expected[1], samples);
+            vector.undoLeftSide(actual[0], actual[1], samples);
+            assertArrayEquals(expected[1], actual[1]);
+
+            scalar.undoRightSide(expected[0], expected[1], samples);
+            vector.undoRightSide(actual[0], actual[1], samples);
+            assertArrayEquals(expected[0], actual[0]);
+
+            scalar.undoMidSide(expected[0], expected[1], samples);
+            vector.undoMidSide(actual[0], actual[1], samples);
+            assertArrayEquals(expected[0], actual[0]);
+            assertArrayEquals(expected[1], actual[1]);
+        }
+    }
+
+    @Test
+    void testShiftLeft() {
+        for (int samples = 0; samples < 200; samples++) {
+            int[][] expected = channels(1, samples);
+            int[][] actual = copy(expected);
+            int shift = samples % 31;
+            scalar.shiftLeft(expected[0], samples, shift);
+            vector.shiftLeft(actual[0], samples, shift);
+            assertArrayEquals(expected[0], actual[0]);
+        }
+    }
+
+    @Test
+    void testPack() {
+        for (int bytes = 1; bytes <= 3; bytes++) {
+            for (int count = 1; count <= 3; count++) {
+                for (int assignment = 0; assignment < (count == 2 ? 4 : 1); assignment++) {
+                    for (int samples = 0; samples < 200; samples++) {
+                        int[][] channels = channels(count, samples);
+                        int offset = samples % 7;
+                        // the bytes around the packed ones must be left as they are
+                        byte[] expected = new byte[offset + samples * count * bytes + 64];
+                        Arrays.fill(expected, (byte) 0x5a);
+                        byte[] actual = expected.clone();
+
+                        int expectedEnd = PCMKernelsTest.pack(scalar, bytes, channels, count, assignment, samples, expected, offset);
+                        int actualEnd = PCMKernelsTest.pack(vector, bytes, channels, count, assignment, samples, actual, offset);
+                        assertEquals(offset + samples * count * bytes, expectedEnd);
+                        assertEquals(expectedEnd, actualEnd);
+                        assertArrayEquals(expected, actual);
+                    }
+                }
+            }
+        }
+    }
+}